@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+/**
+ * Superclass of the benchmarks that {@link BenchmarkRunner} runs. A benchmark
+ * is set up once, then its operation is run repeatedly in warmup and
+ * measurement iterations, and finally it is torn down.
+ * <P>
+ * The operation returns a value that depends on the work it did (e.g., the
+ * number of found interfaces). The runner consumes the values so that the
+ * JIT compiler can't drop the work as unused.
+ * </P>
+ */
+public abstract class Benchmark {
+	/** Default number of warmup iterations of micro benchmarks */
+	public static final int DEF_WARMUP_ITERATIONS = 5;
+	/** Default number of measurement iterations of micro benchmarks */
+	public static final int DEF_MEASUREMENT_ITERATIONS = 10;
+	/** Default minimum length of an iteration of micro benchmarks (ms) */
+	public static final int DEF_ITERATION_TIME = 1000;
+
+	private String name;
+	private int warmupIterations;
+	private int measurementIterations;
+	private int iterationTime;
+
+	/**
+	 * Creates a benchmark with the default iteration counts and time
+	 * @param name Name of the benchmark
+	 */
+	public Benchmark(String name) {
+		this(name, DEF_WARMUP_ITERATIONS, DEF_MEASUREMENT_ITERATIONS,
+				DEF_ITERATION_TIME);
+	}
+
+	/**
+	 * Creates a benchmark
+	 * @param name Name of the benchmark
+	 * @param warmupIterations Default number of warmup iterations
+	 * @param measurementIterations Default number of measurement iterations
+	 * @param iterationTime Default minimum length of an iteration
+	 * (milliseconds); every iteration runs the operation at least once
+	 */
+	public Benchmark(String name, int warmupIterations,
+			int measurementIterations, int iterationTime) {
+		this.name = name;
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationTime = iterationTime;
+	}
+
+	/**
+	 * Returns the name of the benchmark
+	 * @return The name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the default number of warmup iterations
+	 * @return The number of iterations
+	 */
+	public int getWarmupIterations() {
+		return this.warmupIterations;
+	}
+
+	/**
+	 * Returns the default number of measurement iterations
+	 * @return The number of iterations
+	 */
+	public int getMeasurementIterations() {
+		return this.measurementIterations;
+	}
+
+	/**
+	 * Returns the default minimum length of an iteration
+	 * @return The length in milliseconds
+	 */
+	public int getIterationTime() {
+		return this.iterationTime;
+	}
+
+	/**
+	 * Sets up the state the operation needs. Called once before the
+	 * warmup iterations.
+	 */
+	public void setUp() {}
+
+	/**
+	 * Runs the benchmarked operation once
+	 * @return A value that depends on the work done
+	 */
+	public abstract long run();
+
+	/**
+	 * Releases the state of the benchmark. Called once after the
+	 * measurement iterations.
+	 */
+	public void tearDown() {}
+
+	@Override
+	public String toString() {
+		return this.name;
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks of the simulator's hot paths and prints the average
+ * time per operation. Every benchmark is first run for a number of warmup
+ * iterations (so that the JIT compiler has compiled the code) and then for a
+ * number of measurement iterations. The score is the mean time per operation
+ * over the measurement iterations and the error is their standard deviation.
+ * <P>
+ * Usage: <CODE>java benchmark.BenchmarkRunner [-w warmups] [-i iterations]
+ * [-t millis] [-l] [patterns]</CODE>
+ * </P>
+ * <P>
+ * Only the benchmarks whose name contains a match for any of the given
+ * regular expression patterns are run (all, if no patterns are given). The
+ * options override the benchmarks' default iteration counts and minimum
+ * iteration time. The runner must be started in the simulator's root
+ * directory, since the benchmarks read settings and data files from there.
+ * </P>
+ */
+public class BenchmarkRunner {
+	/** Number of warmup iterations -option ({@value}) */
+	public static final String WARMUP_FLAG = "-w";
+	/** Number of measurement iterations -option ({@value}) */
+	public static final String ITERATIONS_FLAG = "-i";
+	/** Minimum iteration time -option ({@value}); milliseconds */
+	public static final String TIME_FLAG = "-t";
+	/** List the benchmarks -option ({@value}) */
+	public static final String LIST_FLAG = "-l";
+
+	/** values of the operations, so that their work isn't optimized away */
+	private static volatile long sink;
+
+	private int warmupIterations;
+	private int measurementIterations;
+	private int iterationTime;
+
+	/**
+	 * Creates a runner
+	 * @param warmupIterations Number of warmup iterations or -1 to use the
+	 * benchmarks' defaults
+	 * @param measurementIterations Number of measurement iterations or -1 to
+	 * use the benchmarks' defaults
+	 * @param iterationTime Minimum iteration time (ms) or -1 to use the
+	 * benchmarks' defaults
+	 */
+	public BenchmarkRunner(int warmupIterations, int measurementIterations,
+			int iterationTime) {
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationTime = iterationTime;
+	}
+
+	/**
+	 * Returns all the benchmarks
+	 * @return The benchmarks in the order they are run
+	 */
+	public static List<Benchmark> getBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.addAll(ConnectivityBenchmarks.create());
+		benchmarks.addAll(MovementBenchmarks.create());
+		benchmarks.addAll(RoutingBenchmarks.create());
+		benchmarks.addAll(InputBenchmarks.create());
+		benchmarks.addAll(SimulationBenchmark.create());
+		return benchmarks;
+	}
+
+	/**
+	 * Starts the runner with the given arguments.
+	 * @param args Command line arguments
+	 */
+	public static void main(String[] args) {
+		int warmups = -1;
+		int iterations = -1;
+		int time = -1;
+		boolean listOnly = false;
+		int i;
+
+		/* set US locale to parse decimals in consistent way */
+		java.util.Locale.setDefault(java.util.Locale.US);
+
+		for (i=0; i < args.length && args[i].startsWith("-"); i++) {
+			if (args[i].equals(LIST_FLAG)) {
+				listOnly = true;
+				continue;
+			}
+			if (i == args.length - 1) {
+				exit("Missing value for option " + args[i]);
+			}
+			if (args[i].equals(WARMUP_FLAG)) {
+				warmups = parseInt(args[++i], 0);
+			}
+			else if (args[i].equals(ITERATIONS_FLAG)) {
+				iterations = parseInt(args[++i], 1);
+			}
+			else if (args[i].equals(TIME_FLAG)) {
+				time = parseInt(args[++i], 0);
+			}
+			else {
+				exit("Usage: BenchmarkRunner [" + WARMUP_FLAG + " warmups] [" +
+						ITERATIONS_FLAG + " iterations] [" + TIME_FLAG +
+						" millis] [" + LIST_FLAG + "] [patterns]");
+			}
+		}
+
+		List<Benchmark> selected = new ArrayList<Benchmark>();
+		for (Benchmark b : getBenchmarks()) {
+			if (i == args.length || matchesAny(b.getName(), args, i)) {
+				selected.add(b);
+			}
+		}
+
+		if (listOnly) {
+			for (Benchmark b : selected) {
+				print(b.getName());
+			}
+			return;
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner(warmups, iterations, time);
+		List<String> results = new ArrayList<String>();
+		for (Benchmark b : selected) {
+			results.add(runner.run(b));
+		}
+
+		print("");
+		print(String.format("%-45s %5s %14s    %12s  %s", "Benchmark", "Cnt",
+				"Score", "StdDev", "Units"));
+		for (String r : results) {
+			print(r);
+		}
+	}
+
+	/**
+	 * Runs a benchmark
+	 * @param b The benchmark
+	 * @return The result line of the benchmark
+	 */
+	public String run(Benchmark b) {
+		int warmups = this.warmupIterations >= 0 ? this.warmupIterations :
+			b.getWarmupIterations();
+		int iterations = this.measurementIterations > 0 ?
+				this.measurementIterations : b.getMeasurementIterations();
+		long minTime = (this.iterationTime >= 0 ? this.iterationTime :
+			b.getIterationTime()) * 1000000L;
+		double[] scores = new double[iterations];
+
+		print("# " + b.getName());
+		b.setUp();
+		try {
+			for (int i=0; i<warmups; i++) {
+				double score = runIteration(b, minTime);
+				print(String.format("Warmup %d: %s", i + 1, format(score)));
+			}
+			for (int i=0; i<iterations; i++) {
+				scores[i] = runIteration(b, minTime);
+				print(String.format("Iteration %d: %s", i + 1,
+						format(scores[i])));
+			}
+		} finally {
+			b.tearDown();
+		}
+
+		double mean = 0;
+		for (double s : scores) {
+			mean += s;
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (double s : scores) {
+			variance += (s - mean) * (s - mean);
+		}
+		double stdDev = iterations > 1 ?
+				Math.sqrt(variance / (iterations - 1)) : 0;
+
+		double unit = getUnit(mean);
+		return String.format("%-45s %5d %14.3f +- %12.3f  %s/op", b.getName(),
+				iterations, mean / unit, stdDev / unit, getUnitName(unit));
+	}
+
+	/**
+	 * Runs the benchmark's operation until the minimum time has passed.
+	 * The operation is run in batches that grow while they are short, so
+	 * that reading the clock doesn't dominate short operations.
+	 * @param b The benchmark
+	 * @param minTime Minimum time of the iteration (ns)
+	 * @return Average time of an operation (ns)
+	 */
+	private double runIteration(Benchmark b, long minTime) {
+		long values = 0;
+		long ops = 0;
+		int batch = 1;
+		long start = System.nanoTime();
+		long elapsed;
+
+		do {
+			for (int i=0; i<batch; i++) {
+				values += b.run();
+			}
+			ops += batch;
+			elapsed = System.nanoTime() - start;
+			if (elapsed < minTime / 100 && batch < (1 << 20)) {
+				batch *= 2;
+			}
+		} while (elapsed < minTime);
+
+		sink += values;
+		return (double)elapsed / ops;
+	}
+
+	/**
+	 * Returns true if the name contains a match for any of the patterns
+	 * @param name The name
+	 * @param patterns The patterns
+	 * @param first Index of the first pattern
+	 * @return True if any of the patterns was found
+	 */
+	private static boolean matchesAny(String name, String[] patterns,
+			int first) {
+		for (int i=first; i<patterns.length; i++) {
+			if (Pattern.compile(patterns[i]).matcher(name).find()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the time unit to show a time in
+	 * @param time The time (ns)
+	 * @return Length of the unit (ns)
+	 */
+	private static double getUnit(double time) {
+		if (time >= 1e9) {
+			return 1e9;
+		}
+		if (time >= 1e6) {
+			return 1e6;
+		}
+		if (time >= 1e3) {
+			return 1e3;
+		}
+		return 1;
+	}
+
+	/**
+	 * Returns the name of a time unit
+	 * @param unit Length of the unit (ns)
+	 * @return The name
+	 */
+	private static String getUnitName(double unit) {
+		if (unit == 1e9) {
+			return "s";
+		}
+		if (unit == 1e6) {
+			return "ms";
+		}
+		if (unit == 1e3) {
+			return "us";
+		}
+		return "ns";
+	}
+
+	/**
+	 * Formats an operation time with its unit
+	 * @param time The time (ns)
+	 * @return The formatted time
+	 */
+	private static String format(double time) {
+		double unit = getUnit(time);
+		return String.format("%.3f %s/op", time / unit, getUnitName(unit));
+	}
+
+	/**
+	 * Parses an integer option value
+	 * @param value The value
+	 * @param min The smallest accepted value
+	 * @return The parsed value
+	 */
+	private static int parseInt(String value, int min) {
+		try {
+			int i = Integer.parseInt(value);
+			if (i >= min) {
+				return i;
+			}
+		} catch (NumberFormatException e) {
+			// handled below
+		}
+		exit("Invalid value '" + value + "'; must be an integer >= " + min);
+		return -1;
+	}
+
+	private static void print(String txt) {
+		System.out.println(txt);
+	}
+
+	private static void exit(String txt) {
+		System.err.println(txt);
+		System.exit(-1);
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.util.List;
+
+import core.DTNHost;
+import core.Settings;
+import core.SimClock;
+import core.SimContext;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Simulation world for benchmarks. The world is created from the default
+ * settings and the benchmark settings file ({@value #SETTINGS_FILE}) in a
+ * simulation context of its own (see {@link SimContext}) and run for a
+ * while, so that the hosts have moved, met each other and got messages
+ * before the benchmarks start.
+ */
+public class BenchmarkWorld {
+	/** Settings file of the benchmark world ({@value}). The settings are
+	 * read on top of the default settings. */
+	public static final String SETTINGS_FILE = "benchmark/world_settings.txt";
+
+	private SimContext context;
+	private SimScenario scenario;
+	private World world;
+
+	/**
+	 * Creates a world and runs it for the given simulated time. The world's
+	 * context is left as the current context of the thread.
+	 * @param runTime How long to run the world (simulated seconds)
+	 */
+	public BenchmarkWorld(double runTime) {
+		this.context = new SimContext();
+		enter();
+		Settings.init(SETTINGS_FILE);
+
+		this.scenario = SimScenario.getInstance();
+		this.world = this.scenario.getWorld();
+		while (SimClock.getTime() < runTime) {
+			this.world.update();
+		}
+	}
+
+	/**
+	 * Makes the world's context the current context of the thread. This
+	 * must be done before the world is used in another thread or after
+	 * another world has been created.
+	 */
+	public void enter() {
+		SimContext.setCurrent(this.context);
+	}
+
+	/**
+	 * Clears the thread's current context
+	 */
+	public void exit() {
+		SimContext.setCurrent(null);
+	}
+
+	/**
+	 * Returns the scenario of the world
+	 * @return The scenario
+	 */
+	public SimScenario getScenario() {
+		return this.scenario;
+	}
+
+	/**
+	 * Returns the world
+	 * @return The world
+	 */
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Returns the hosts of the world
+	 * @return The hosts
+	 */
+	public List<DTNHost> getHosts() {
+		return this.world.getHosts();
+	}
+}
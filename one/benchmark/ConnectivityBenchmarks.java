@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import interfaces.ConnectivityGrid;
+import interfaces.SimpleBroadcastInterface;
+import core.DTNHost;
+import core.NetworkInterface;
+
+/**
+ * Benchmarks of the connectivity detection: looking up the interfaces near
+ * an interface and updating an interface's connections. The operations go
+ * through the interfaces of the benchmark world (see {@link BenchmarkWorld})
+ * one at a time.
+ */
+public class ConnectivityBenchmarks {
+
+	/**
+	 * Creates the benchmarks
+	 * @return The benchmarks
+	 */
+	public static List<Benchmark> create() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new NearInterfacesBenchmark());
+		benchmarks.add(new InterfaceUpdateBenchmark());
+		return benchmarks;
+	}
+
+	/**
+	 * Returns the simple broadcast interfaces of the hosts
+	 * @param hosts The hosts
+	 * @return The interfaces
+	 */
+	private static List<NetworkInterface> getInterfaces(List<DTNHost> hosts) {
+		List<NetworkInterface> interfaces = new ArrayList<NetworkInterface>();
+		for (DTNHost h : hosts) {
+			for (NetworkInterface ni : h.getInterfaces()) {
+				if (ni instanceof SimpleBroadcastInterface) {
+					interfaces.add(ni);
+				}
+			}
+		}
+		return interfaces;
+	}
+
+	/**
+	 * Benchmark of {@link ConnectivityGrid#getNearInterfaces(NetworkInterface)}
+	 */
+	private static class NearInterfacesBenchmark extends Benchmark {
+		private BenchmarkWorld world;
+		private NetworkInterface[] interfaces;
+		private ConnectivityGrid[] grids;
+		private int next;
+
+		public NearInterfacesBenchmark() {
+			super("ConnectivityGrid.getNearInterfaces");
+		}
+
+		@Override
+		public void setUp() {
+			this.world = new BenchmarkWorld(1000);
+			List<NetworkInterface> list = getInterfaces(world.getHosts());
+			this.interfaces = list.toArray(new NetworkInterface[0]);
+			this.grids = new ConnectivityGrid[this.interfaces.length];
+			for (int i=0; i<this.interfaces.length; i++) {
+				NetworkInterface ni = this.interfaces[i];
+				/* returns the grid the interface was added to */
+				this.grids[i] = ConnectivityGrid.ConnectivityGridFactory(
+						ni.getInterfaceType().hashCode(),
+						ni.getTransmitRange());
+			}
+			this.next = 0;
+		}
+
+		@Override
+		public long run() {
+			int i = this.next;
+			this.next = (i + 1) % this.interfaces.length;
+			return this.grids[i].getNearInterfaces(this.interfaces[i]).size();
+		}
+
+		@Override
+		public void tearDown() {
+			this.world.exit();
+		}
+	}
+
+	/**
+	 * Benchmark of {@link SimpleBroadcastInterface#update()}. The hosts
+	 * don't move, so this measures the steady state where most connections
+	 * stay up.
+	 */
+	private static class InterfaceUpdateBenchmark extends Benchmark {
+		private BenchmarkWorld world;
+		private NetworkInterface[] interfaces;
+		private int next;
+
+		public InterfaceUpdateBenchmark() {
+			super("SimpleBroadcastInterface.update");
+		}
+
+		@Override
+		public void setUp() {
+			this.world = new BenchmarkWorld(1000);
+			List<NetworkInterface> list = getInterfaces(world.getHosts());
+			this.interfaces = list.toArray(new NetworkInterface[0]);
+			this.next = 0;
+		}
+
+		@Override
+		public long run() {
+			NetworkInterface ni = this.interfaces[this.next];
+			this.next = (this.next + 1) % this.interfaces.length;
+			ni.update();
+			return ni.getConnections().size();
+		}
+
+		@Override
+		public void tearDown() {
+			this.world.exit();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import input.ExternalEventsQueue;
+import input.StandardEventsReader;
+import core.SimError;
+
+/**
+ * Benchmarks of reading external events
+ */
+public class InputBenchmarks {
+
+	/**
+	 * Creates the benchmarks
+	 * @return The benchmarks
+	 */
+	public static List<Benchmark> create() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new StandardEventsBenchmark());
+		return benchmarks;
+	}
+
+	/**
+	 * Benchmark of {@link StandardEventsReader#readEvents(int)}. Every
+	 * operation reads a whole events file of {@value #NROF_EVENTS} random
+	 * message and connection events in chunks of the default preload size
+	 * of the external events queue.
+	 */
+	private static class StandardEventsBenchmark extends Benchmark {
+		/** number of events in the file */
+		private static final int NROF_EVENTS = 10000;
+		/** number of hosts in the events */
+		private static final int NROF_HOSTS = 126;
+		private File eventsFile;
+
+		public StandardEventsBenchmark() {
+			super("StandardEventsReader.readEvents");
+		}
+
+		@Override
+		public void setUp() {
+			Random rng = new Random(1);
+			PrintWriter out = null;
+			try {
+				this.eventsFile = File.createTempFile("benchmark_events",
+						".txt");
+				out = new PrintWriter(new FileWriter(this.eventsFile));
+				for (int i=0; i<NROF_EVENTS; i++) {
+					String time = String.format("%.1f", i * 0.5);
+					String h1 = "p" + rng.nextInt(NROF_HOSTS);
+					String h2 = "p" + rng.nextInt(NROF_HOSTS);
+					switch (i % 4) {
+					case 0:
+						out.println(time + " " + StandardEventsReader.CREATE +
+								" M" + i + " " + h1 + " " + h2 + " " +
+								(1000 + rng.nextInt(100000)));
+						break;
+					case 1:
+						out.println(time + " " + StandardEventsReader.SEND +
+								" M" + (i - 1) + " " + h1 + " " + h2);
+						break;
+					case 2:
+						out.println(time + " " +
+								StandardEventsReader.CONNECTION + " " + h1 +
+								" " + h2 + " " +
+								StandardEventsReader.CONNECTION_UP);
+						break;
+					default:
+						out.println(time + " " +
+								StandardEventsReader.DELIVERED + " M" +
+								(i - 3) + " " + h1 + " " + h2);
+					}
+				}
+			} catch (IOException e) {
+				throw new SimError("Can't write events file: " +
+						e.getMessage(), e);
+			} finally {
+				if (out != null) {
+					out.close();
+				}
+			}
+		}
+
+		@Override
+		public long run() {
+			StandardEventsReader reader =
+				new StandardEventsReader(this.eventsFile);
+			long count = 0;
+			int n;
+			do {
+				n = reader.readEvents(
+						ExternalEventsQueue.DEFAULT_NROF_PRELOAD).size();
+				count += n;
+			} while (n > 0);
+			reader.close();
+			return count;
+		}
+
+		@Override
+		public void tearDown() {
+			this.eventsFile.delete();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import movement.map.DijkstraPathFinder;
+import movement.map.MapNode;
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Benchmarks of host movement: moving the hosts along their paths and
+ * finding shortest paths on the map of the benchmark world (see
+ * {@link BenchmarkWorld}).
+ */
+public class MovementBenchmarks {
+
+	/**
+	 * Creates the benchmarks
+	 * @return The benchmarks
+	 */
+	public static List<Benchmark> create() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new MoveBenchmark());
+		benchmarks.add(new ShortestPathBenchmark());
+		return benchmarks;
+	}
+
+	/**
+	 * Benchmark of {@link DTNHost#move(double)}. Every operation moves one
+	 * host for one update interval; the clock is advanced when all the hosts
+	 * have been moved, so the hosts keep moving (and waiting) like in a
+	 * simulation.
+	 */
+	private static class MoveBenchmark extends Benchmark {
+		private BenchmarkWorld world;
+		private DTNHost[] hosts;
+		private double interval;
+		private int next;
+
+		public MoveBenchmark() {
+			super("DTNHost.move");
+		}
+
+		@Override
+		public void setUp() {
+			this.world = new BenchmarkWorld(1000);
+			this.hosts = world.getHosts().toArray(new DTNHost[0]);
+			this.interval = world.getScenario().getUpdateInterval();
+			this.next = 0;
+		}
+
+		@Override
+		public long run() {
+			DTNHost host = this.hosts[this.next++];
+			if (this.next == this.hosts.length) {
+				this.next = 0;
+				SimClock.getInstance().advance(this.interval);
+			}
+			host.move(this.interval);
+			return (long)host.getLocation().getX();
+		}
+
+		@Override
+		public void tearDown() {
+			this.world.exit();
+		}
+	}
+
+	/**
+	 * Benchmark of {@link DijkstraPathFinder#getShortestPath(MapNode,
+	 * MapNode)} between random nodes of the map
+	 */
+	private static class ShortestPathBenchmark extends Benchmark {
+		/** number of node pairs to go through */
+		private static final int NROF_PAIRS = 1024;
+		private BenchmarkWorld world;
+		private DijkstraPathFinder finder;
+		private MapNode[] from;
+		private MapNode[] to;
+		private int next;
+
+		public ShortestPathBenchmark() {
+			super("DijkstraPathFinder.getShortestPath");
+		}
+
+		@Override
+		public void setUp() {
+			this.world = new BenchmarkWorld(0);
+			List<MapNode> nodes = world.getScenario().getMap().getNodes();
+			Random rng = new Random(1);
+
+			this.finder = new DijkstraPathFinder(null);
+			this.from = new MapNode[NROF_PAIRS];
+			this.to = new MapNode[NROF_PAIRS];
+			for (int i=0; i<NROF_PAIRS; i++) {
+				this.from[i] = nodes.get(rng.nextInt(nodes.size()));
+				this.to[i] = nodes.get(rng.nextInt(nodes.size()));
+			}
+			this.next = 0;
+		}
+
+		@Override
+		public long run() {
+			int i = this.next;
+			this.next = (i + 1) % NROF_PAIRS;
+			return this.finder.getShortestPath(this.from[i], this.to[i]).size();
+		}
+
+		@Override
+		public void tearDown() {
+			this.world.exit();
+		}
+	}
+}
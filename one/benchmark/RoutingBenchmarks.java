@@ -0,0 +1,199 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import routing.MaxPropRouter;
+import routing.MessageRouter;
+import routing.ProphetRouter;
+import routing.maxprop.MaxPropDijkstra;
+import routing.maxprop.MeetingProbabilitySet;
+import routing.maxprop.MeetingProbabilityTable;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Benchmarks of the routers' hot paths: message buffer operations,
+ * PRoPHET's delivery predictabilities and MaxProp's path costs.
+ */
+public class RoutingBenchmarks {
+
+	/**
+	 * Creates the benchmarks
+	 * @return The benchmarks
+	 */
+	public static List<Benchmark> create() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new BufferBenchmark());
+		benchmarks.add(new PredictabilityBenchmark());
+		benchmarks.add(new MaxPropCostBenchmark());
+		return benchmarks;
+	}
+
+	/**
+	 * Benchmark of {@link MessageRouter}'s buffer operations. Every operation
+	 * deletes the oldest benchmark message from a host's buffer and creates
+	 * a new one, so the buffer's size stays the same.
+	 */
+	private static class BufferBenchmark extends Benchmark {
+		/** number of benchmark messages in the buffer */
+		private static final int NROF_BUFFERED = 500;
+		/** size of the benchmark messages (bytes) */
+		private static final int MSG_SIZE = 1000;
+		private BenchmarkWorld world;
+		private MessageRouter router;
+		private Message[] messages;
+		private int next;
+
+		public BufferBenchmark() {
+			super("MessageRouter.createNewMessage+deleteMessage");
+		}
+
+		@Override
+		public void setUp() {
+			this.world = new BenchmarkWorld(1000);
+			List<DTNHost> hosts = world.getHosts();
+			DTNHost host = hosts.get(0);
+			this.router = host.getRouter();
+
+			/* every message is in the buffer at most once at a time */
+			this.messages = new Message[NROF_BUFFERED * 2];
+			for (int i=0; i<this.messages.length; i++) {
+				DTNHost to = hosts.get(1 + i % (hosts.size() - 1));
+				this.messages[i] = new Message(host, to, "bench" + i,
+						MSG_SIZE);
+			}
+			for (int i=0; i<NROF_BUFFERED; i++) {
+				this.router.createNewMessage(this.messages[i]);
+			}
+			this.next = 0;
+		}
+
+		@Override
+		public long run() {
+			int n = this.messages.length;
+			this.router.deleteMessage(this.messages[this.next].getId(), false);
+			this.router.createNewMessage(
+					this.messages[(this.next + NROF_BUFFERED) % n]);
+			this.next = (this.next + 1) % n;
+			return this.router.getNrofMessages();
+		}
+
+		@Override
+		public void tearDown() {
+			this.world.exit();
+		}
+	}
+
+	/**
+	 * Benchmark of {@link ProphetRouter#getPredFor(DTNHost)} for all the host
+	 * pairs of the benchmark world
+	 */
+	private static class PredictabilityBenchmark extends Benchmark {
+		private BenchmarkWorld world;
+		private DTNHost[] hosts;
+		private ProphetRouter[] routers;
+		private int nextRouter;
+		private int nextHost;
+
+		public PredictabilityBenchmark() {
+			super("ProphetRouter.getPredFor");
+		}
+
+		@Override
+		public void setUp() {
+			this.world = new BenchmarkWorld(1000);
+			this.hosts = world.getHosts().toArray(new DTNHost[0]);
+			this.routers = new ProphetRouter[this.hosts.length];
+			for (int i=0; i<this.hosts.length; i++) {
+				this.routers[i] = (ProphetRouter)this.hosts[i].getRouter();
+			}
+			this.nextRouter = 0;
+			this.nextHost = 0;
+		}
+
+		@Override
+		public long run() {
+			double pred = this.routers[this.nextRouter].getPredFor(
+					this.hosts[this.nextHost]);
+			if (++this.nextHost == this.hosts.length) {
+				this.nextHost = 0;
+				this.nextRouter = (this.nextRouter + 1) % this.routers.length;
+			}
+			return pred > 0 ? 1 : 0;
+		}
+
+		@Override
+		public void tearDown() {
+			this.world.exit();
+		}
+	}
+
+	/**
+	 * Benchmark of {@link MaxPropDijkstra#getCosts(Integer, Set)}. The
+	 * meeting probability sets are created from random meetings. Before
+	 * every search one node meets another one, so the costs have to be
+	 * updated like after a contact in a simulation.
+	 */
+	private static class MaxPropCostBenchmark extends Benchmark {
+		/** number of nodes */
+		private static final int NROF_NODES = 126;
+		/** number of nodes the costs are calculated to */
+		private static final int NROF_TARGETS = 20;
+		/** number of random meetings before the benchmark */
+		private static final int NROF_MEETINGS = 20000;
+		private MeetingProbabilitySet[] sets;
+		private MaxPropDijkstra dijkstra;
+		private Set<Integer> targets;
+		private Random rng;
+
+		public MaxPropCostBenchmark() {
+			super("MaxPropDijkstra.getCosts");
+		}
+
+		@Override
+		public void setUp() {
+			MeetingProbabilityTable table = new MeetingProbabilityTable();
+			this.rng = new Random(1);
+			this.sets = new MeetingProbabilitySet[NROF_NODES];
+			for (int i=0; i<NROF_NODES; i++) {
+				this.sets[i] = new MeetingProbabilitySet(
+						MaxPropRouter.DEFAULT_PROB_SET_MAX_SIZE,
+						MaxPropRouter.DEFAULT_ALPHA);
+				table.put(i, this.sets[i]);
+			}
+			for (int i=0; i<NROF_MEETINGS; i++) {
+				meet();
+			}
+
+			this.dijkstra = new MaxPropDijkstra(table.getSets());
+			this.targets = new HashSet<Integer>();
+			while (this.targets.size() < NROF_TARGETS) {
+				this.targets.add(1 + this.rng.nextInt(NROF_NODES - 1));
+			}
+		}
+
+		/**
+		 * Updates the meeting probabilities of two random nodes
+		 */
+		private void meet() {
+			int a = this.rng.nextInt(NROF_NODES);
+			int b = (a + 1 + this.rng.nextInt(NROF_NODES - 1)) % NROF_NODES;
+			this.sets[a].updateMeetingProbFor(b);
+			this.sets[b].updateMeetingProbFor(a);
+		}
+
+		@Override
+		public long run() {
+			meet();
+			return this.dijkstra.getCosts(0, this.targets).size();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.DTNSim;
+
+/**
+ * Macro benchmark that runs a whole simulation in batch mode (see
+ * {@link DTNSim}). The scenarios are shortened copies of the simulator's
+ * scenarios: a settings file in the benchmark directory is read on top of
+ * the scenario's own settings and cuts the simulation time and the reports.
+ * The simulator's output is discarded during the runs.
+ */
+public class SimulationBenchmark extends Benchmark {
+	/** Default number of warmup runs */
+	public static final int DEF_WARMUP_RUNS = 1;
+	/** Default number of measured runs */
+	public static final int DEF_MEASURED_RUNS = 3;
+
+	private String[] args;
+
+	/**
+	 * Creates a simulation benchmark
+	 * @param name Name of the benchmark
+	 * @param confFiles The settings files of the simulation
+	 */
+	public SimulationBenchmark(String name, String... confFiles) {
+		super(name, DEF_WARMUP_RUNS, DEF_MEASURED_RUNS, 0);
+		this.args = new String[confFiles.length + 2];
+		this.args[0] = DTNSim.BATCH_MODE_FLAG;
+		this.args[1] = "1";
+		System.arraycopy(confFiles, 0, this.args, 2, confFiles.length);
+	}
+
+	/**
+	 * Creates the benchmarks
+	 * @return The benchmarks
+	 */
+	public static List<Benchmark> create() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		/* default_settings.txt is always read first */
+		benchmarks.add(new SimulationBenchmark("Simulation.default_settings",
+				"benchmark/default_trimmed.txt"));
+		benchmarks.add(new SimulationBenchmark("Simulation.assignment2_city",
+				"assignment2_city.txt", "benchmark/city_trimmed.txt"));
+		return benchmarks;
+	}
+
+	@Override
+	public long run() {
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {} // discard the simulator's output
+		}));
+		try {
+			DTNSim.main(this.args);
+		} finally {
+			System.setOut(out);
+		}
+		return 1;
+	}
+}
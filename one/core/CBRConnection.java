@@ -12,23 +12,46 @@ import routing.MessageRouter;
 public class CBRConnection extends Connection {
 	private int speed;
 	private double transferDoneTime;
+	/** where the completions of the transfers are scheduled (or null) */
+	private TransferCompletionScheduler completionScheduler;
 
 	/**
 	 * Creates a new connection between nodes and sets the connection
-	 * state to "up".
+	 * state to "up". The completions of the transfers are scheduled to
+	 * the given scheduler; without a scheduler the sending router notices
+	 * the completion in its next update.
 	 * @param fromNode The node that initiated the connection
 	 * @param fromInterface The interface that initiated the connection
 	 * @param toNode The node in the other side of the connection
 	 * @param toInterface The interface in the other side of the connection
 	 * @param connectionSpeed Transfer speed of the connection (Bps) when 
 	 *  the connection is initiated
+	 * @param completionScheduler The scheduler of the transfer completions
+	 *  or null
 	 */
 	public CBRConnection(DTNHost fromNode, NetworkInterface fromInterface, 
-			DTNHost toNode,	NetworkInterface toInterface, int connectionSpeed) {
+			DTNHost toNode,	NetworkInterface toInterface, int connectionSpeed,
+			TransferCompletionScheduler completionScheduler) {
 		super(fromNode, fromInterface, toNode, toInterface);
 		this.speed = connectionSpeed;
 		this.transferDoneTime = 0;
+		this.completionScheduler = completionScheduler;
+	}
 
+	/**
+	 * Creates a new connection between nodes and sets the connection
+	 * state to "up". The completions of the transfers are not scheduled.
+	 * @param fromNode The node that initiated the connection
+	 * @param fromInterface The interface that initiated the connection
+	 * @param toNode The node in the other side of the connection
+	 * @param toInterface The interface in the other side of the connection
+	 * @param connectionSpeed Transfer speed of the connection (Bps) when 
+	 *  the connection is initiated
+	 */
+	public CBRConnection(DTNHost fromNode, NetworkInterface fromInterface, 
+			DTNHost toNode,	NetworkInterface toInterface, int connectionSpeed) {
+		this(fromNode, fromInterface, toNode, toInterface, connectionSpeed,
+				null);
 	}
 
 	/**
@@ -56,11 +79,24 @@ public class CBRConnection extends Connection {
 			this.msgOnFly = newMessage;
 			this.transferDoneTime = SimClock.getTime() + 
 			(1.0*m.getSize()) / this.speed;
+			scheduleCompletion();
 		}
 
 		return retVal;
 	}
 
+	/**
+	 * Schedules the completion of the current transfer to the completion
+	 * scheduler, if the connection has one. Otherwise the sending router
+	 * notices the completion in its next update.
+	 */
+	private void scheduleCompletion() {
+		if (this.completionScheduler != null) {
+			this.completionScheduler.scheduleTransferCompletion(this,
+					this.transferDoneTime);
+		}
+	}
+
 	/**
 	 * Aborts the transfer of the currently transferred message.
 	 */
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Predicts when hosts come within radio range of each other, or go out of
+ * range, during the next update interval and schedules world updates for
+ * those times. The hosts move along straight path segments at constant
+ * speed, so the times can be solved from the hosts' current locations and
+ * velocities.
+ * <P>
+ * A prediction is only made for as long as both hosts keep their current
+ * velocity (see {@link DTNHost#getVelocity(double[])}). Contacts that
+ * start or end after a host reaches its waypoint, or stops waiting, are
+ * found at the next interval update as without the prediction.
+ * </P>
+ * <P>
+ * The scheduled updates have to find the hosts at their exact location, so
+ * {@link World} moves the hosts to the time of every event when the
+ * prediction is in use.
+ * </P>
+ * @see World#CONTACT_PREDICTION_S
+ */
+public class ContactPredictor {
+	/** resolution of the predicted times (seconds). Times are rounded up
+	 * so that the hosts are surely in (or out of) range at the update. */
+	public static final double TIME_RESOLUTION = 0.001;
+
+	/** x components of the hosts' velocities (by index in the host list) */
+	private double[] vxs;
+	/** y components of the hosts' velocities (by index in the host list) */
+	private double[] vys;
+	/** how long the hosts keep their velocities (by index) */
+	private double[] horizons;
+	/** buffer for a host's velocity */
+	private double[] velocity;
+
+	/**
+	 * Creates a new contact predictor
+	 */
+	public ContactPredictor() {
+		this.vxs = new double[0];
+		this.vys = new double[0];
+		this.horizons = new double[0];
+		this.velocity = new double[2];
+	}
+
+	/**
+	 * Schedules updates for the times during the next interval when some
+	 * hosts come within range of each other or go out of range.
+	 * @param world The world where the updates are scheduled
+	 * @param hosts The hosts of the world
+	 * @param interval Length of the interval (seconds from the current
+	 * simulation time)
+	 */
+	public void scheduleContacts(World world, List<DTNHost> hosts,
+			double interval) {
+		int n = hosts.size();
+		if (n < 2) {
+			return;
+		}
+		if (this.horizons.length < n) {
+			this.vxs = new double[n];
+			this.vys = new double[n];
+			this.horizons = new double[n];
+		}
+
+		/* velocities, and the largest range and distance moved */
+		double maxRange = 0;
+		double maxMovement = 0;
+		for (int i=0; i<n; i++) {
+			DTNHost h = hosts.get(i);
+			double horizon = Math.min(h.getVelocity(velocity), interval);
+			vxs[i] = velocity[0];
+			vys[i] = velocity[1];
+			horizons[i] = horizon;
+			double movement = horizon * Math.sqrt(velocity[0]*velocity[0] +
+					velocity[1]*velocity[1]);
+			if (movement > maxMovement) {
+				maxMovement = movement;
+			}
+			for (NetworkInterface ni : h.getInterfaces()) {
+				if (ni.getTransmitRange() > maxRange) {
+					maxRange = ni.getTransmitRange();
+				}
+			}
+		}
+
+		/* hosts whose range can be crossed are in the neighboring buckets */
+		double bucketSize = maxRange + 2 * maxMovement;
+		if (bucketSize <= 0) {
+			return;
+		}
+		HostPositions positions = hosts.get(0).getPositions();
+		HashMap<Long, List<Integer>> buckets =
+			new HashMap<Long, List<Integer>>();
+		long[] cols = new long[n];
+		long[] rows = new long[n];
+		for (int i=0; i<n; i++) {
+			int address = hosts.get(i).getAddress();
+			cols[i] = (long)Math.floor(positions.getX(address) / bucketSize);
+			rows[i] = (long)Math.floor(positions.getY(address) / bucketSize);
+			Long key = bucketKey(cols[i], rows[i]);
+			List<Integer> bucket = buckets.get(key);
+			if (bucket == null) {
+				bucket = new ArrayList<Integer>();
+				buckets.put(key, bucket);
+			}
+			bucket.add(i);
+		}
+
+		double now = SimClock.getTime();
+		for (int i=0; i<n; i++) {
+			if (horizons[i] <= 0) {
+				continue;
+			}
+			for (long x = cols[i]-1; x <= cols[i]+1; x++) {
+				for (long y = rows[i]-1; y <= rows[i]+1; y++) {
+					List<Integer> bucket = buckets.get(bucketKey(x, y));
+					if (bucket == null) {
+						continue;
+					}
+					for (int j : bucket) {
+						if (j > i) { // every pair only once
+							schedulePair(world, hosts, i, j, now, interval);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Schedules the range crossings of two hosts' interfaces
+	 * @param world The world where the updates are scheduled
+	 * @param hosts The hosts
+	 * @param i Index of the first host
+	 * @param j Index of the second host
+	 * @param now Current simulation time
+	 * @param interval Length of the interval
+	 */
+	private void schedulePair(World world, List<DTNHost> hosts, int i, int j,
+			double now, double interval) {
+		double horizon = Math.min(horizons[i], horizons[j]);
+		double vx = vxs[j] - vxs[i];
+		double vy = vys[j] - vys[i];
+		double a = vx*vx + vy*vy;
+		if (horizon <= 0 || a == 0) {
+			return; // nothing changes
+		}
+
+		DTNHost h1 = hosts.get(i);
+		DTNHost h2 = hosts.get(j);
+		HostPositions positions = h1.getPositions();
+		int a1 = h1.getAddress();
+		int a2 = h2.getAddress();
+		double px = positions.getX(a2) - positions.getX(a1);
+		double py = positions.getY(a2) - positions.getY(a1);
+		double b = 2 * (px*vx + py*vy);
+		double distSq = px*px + py*py;
+
+		for (NetworkInterface ni : h1.getInterfaces()) {
+			for (NetworkInterface other : h2.getInterfaces()) {
+				if (ni.optimizer != other.optimizer) {
+					continue;
+				}
+				double range = Math.min(ni.getTransmitRange(),
+						other.getTransmitRange());
+				/* |p + vt|^2 = range^2 */
+				double c = distSq - range*range;
+				double disc = b*b - 4*a*c;
+				if (disc <= 0) {
+					continue; // never in range (or only touching)
+				}
+				double sqrtDisc = Math.sqrt(disc);
+				double enter = (-b - sqrtDisc) / (2*a);
+				double exit = (-b + sqrtDisc) / (2*a);
+				if (enter > 0 && enter <= horizon) {
+					schedule(world, now, enter, interval);
+				}
+				if (exit > 0 && exit <= horizon) {
+					schedule(world, now, exit, interval);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Schedules an update for a predicted time. The time is rounded up to
+	 * the next multiple of {@link #TIME_RESOLUTION}. Times that round past
+	 * the interval are left for the interval update.
+	 * @param world The world where the update is scheduled
+	 * @param now Current simulation time
+	 * @param delay Time from now to the range crossing
+	 * @param interval Length of the interval
+	 */
+	private void schedule(World world, double now, double delay,
+			double interval) {
+		double time = (Math.floor((now + delay) / TIME_RESOLUTION) + 1) *
+			TIME_RESOLUTION;
+		if (time > now && time < now + interval) {
+			world.scheduleUpdate(time);
+		}
+	}
+
+	/**
+	 * Returns the hash map key for a bucket
+	 * @param x Column of the bucket
+	 * @param y Row of the bucket
+	 * @return The key
+	 */
+	private static Long bucketKey(long x, long y) {
+		return (x << 32) ^ (y & 0xFFFFFFFFL);
+	}
+}
@@ -6,6 +6,7 @@ package core;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import movement.MovementModel;
@@ -17,11 +18,12 @@ import routing.RoutingInfo;
  * A DTN capable host.
  */
 public class DTNHost implements Comparable<DTNHost> {
-	private static int nextAddress = 0;
 	private int address;
 
 	private Coord location; 	// where is the host
 	private Coord destination;	// where is it going
+	/** location table where the host keeps its location up to date */
+	private HostPositions positions;
 
 	private MessageRouter router;
 	private MovementModel movement;
@@ -32,7 +34,16 @@ public class DTNHost implements Comparable<DTNHost> {
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
 	private List<NetworkInterface> net;
+	/** connections of all the interfaces (in the order of the interfaces) */
+	private List<Connection> connections;
+	/** read-only view of the connections */
+	private List<Connection> connectionView;
 	private ModuleCommunicationBus comBus;
+	/** true if the router was idle after its last update and nothing
+	 * has woken it up since (see {@link MessageRouter#isIdle()}) */
+	private boolean routerIdle;
+	/** the world this host is in (null if not in a world yet) */
+	private World world;
 
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
@@ -56,8 +67,12 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.comBus = comBus;
 		this.location = new Coord(0,0);
 		this.address = getNextAddress();
+		this.positions = SimContext.getCurrent().hostPositions;
+		this.positions.setLocation(address, 0, 0);
 		this.name = groupId+address;
 		this.net = new ArrayList<NetworkInterface>();
+		this.connections = new ArrayList<Connection>();
+		this.connectionView = Collections.unmodifiableList(this.connections);
 
 		for (NetworkInterface i : interf) {
 			NetworkInterface ni = i.replicate();
@@ -77,6 +92,7 @@ public class DTNHost implements Comparable<DTNHost> {
 		setRouter(mRouterProto.replicate());
 
 		this.location = movement.getInitialLocation();
+		this.positions.setLocation(address, location.getX(), location.getY());
 
 		this.nextTimeToMove = movement.nextPathAvailable();
 		this.path = null;
@@ -94,14 +110,16 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @return The next address.
 	 */
 	private synchronized static int getNextAddress() {
-		return nextAddress++;	
+		return SimContext.getCurrent().nextHostAddress++;	
 	}
 
 	/**
 	 * Reset the host and its interfaces
 	 */
 	public static void reset() {
-		nextAddress = 0;
+		SimContext context = SimContext.getCurrent();
+		context.nextHostAddress = 0;
+		context.hostPositions = new HostPositions();
 	}
 
 	/**
@@ -129,6 +147,33 @@ public class DTNHost implements Comparable<DTNHost> {
 		return this.router;
 	}
 
+	/**
+	 * Sets the world this host is in. The world sets itself to its hosts
+	 * when it is created.
+	 * @param world The world
+	 */
+	void setWorld(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Returns the world this host is in
+	 * @return The world or null if the host is not in a world
+	 */
+	World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Returns the timing wheel where the router of this host schedules the
+	 * expiry of its messages
+	 * @return The wheel of the world this host is in or null if the host is
+	 * not in a world
+	 */
+	public ExpiryWheel getExpiryWheel() {
+		return this.world == null ? null : this.world.getExpiryWheel();
+	}
+
 	/**
 	 * Returns the network-layer address of this host.
 	 */
@@ -150,25 +195,52 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param con  The connection object whose state changed
 	 */
 	public void connectionUp(Connection con) {
+		this.routerIdle = false;
 		this.router.changedConnection(con);
 	}
 
 	public void connectionDown(Connection con) {
+		this.routerIdle = false;
 		this.router.changedConnection(con);
 	}
 
 	/**
-	 * Returns a copy of the list of connections this host has with other hosts
-	 * @return a copy of the list of connections this host has with other hosts
+	 * Returns a read-only view of the connections this host has with other
+	 * hosts. The connections of the interfaces are in the order of the
+	 * interfaces. The view changes when the connections change, so it
+	 * should be copied if connections may come up or go down while it's
+	 * being iterated.
+	 * @return The connections this host has with other hosts
 	 */
 	public List<Connection> getConnections() {
-		List<Connection> lc = new ArrayList<Connection>();
+		return this.connectionView;
+	}
 
-		for (NetworkInterface i : net) {
-			lc.addAll(i.getConnections());
+	/**
+	 * Adds a connection that was added to an interface of this host to the
+	 * host's connections, at the same position among the interface's
+	 * connections
+	 * @param ni The interface
+	 * @param index Index of the connection in the interface's connections
+	 * @param con The connection
+	 */
+	void connectionAdded(NetworkInterface ni, int index, Connection con) {
+		for (NetworkInterface i : this.net) {
+			if (i == ni) {
+				break;
+			}
+			index += i.getConnections().size();
 		}
+		this.connections.add(index, con);
+	}
 
-		return lc;
+	/**
+	 * Removes a connection that was removed from an interface of this host
+	 * from the host's connections
+	 * @param con The connection
+	 */
+	void connectionRemoved(Connection con) {
+		this.connections.remove(con);
 	}
 
 	/**
@@ -179,6 +251,16 @@ public class DTNHost implements Comparable<DTNHost> {
 		return this.location;
 	}
 
+	/**
+	 * Returns the location table of the hosts of this host's simulation
+	 * run. This host's location is in the table at index
+	 * {@link #getAddress()}.
+	 * @return The location table
+	 */
+	public HostPositions getPositions() {
+		return this.positions;
+	}
+
 	/**
 	 * Returns the Path this node is currently traveling or null if no
 	 * path is in use at the moment.
@@ -195,6 +277,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 */
 	public void setLocation(Coord location) {
 		this.location = location.clone();
+		this.positions.setLocation(address, location.getX(), location.getY());
 	}
 
 	/**
@@ -318,6 +401,20 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param simulateConnections Should network layer be updated too
 	 */
 	public void update(boolean simulateConnections) {
+		update(simulateConnections, false);
+	}
+
+	/**
+	 * Updates node's network layer and, unless it can be skipped, the
+	 * router. The router's update is skipped if the router was idle after
+	 * its previous update and the host hasn't got a connection change or a
+	 * message since then; skipping the update doesn't change the results.
+	 * @param simulateConnections Should network layer be updated too
+	 * @param skipIdleRouter Should the router's update be skipped if the
+	 * router is idle
+	 * @see MessageRouter#isIdle()
+	 */
+	public void update(boolean simulateConnections, boolean skipIdleRouter) {
 		if (!isActive()) {
 			return;
 		}
@@ -327,7 +424,41 @@ public class DTNHost implements Comparable<DTNHost> {
 				i.update();
 			}
 		}
-		this.router.update();
+		if (skipIdleRouter && this.routerIdle) {
+			return;
+		}
+		this.router.update();
+		this.routerIdle = this.router.isIdle();
+	}
+
+	/**
+	 * Informs the router of this host that a transfer it is sending has
+	 * completed between the update intervals. The router finalizes the
+	 * transfer and tries to start its next transfer right away. Does
+	 * nothing if the host is not active.
+	 * @param con The connection whose transfer completed
+	 * @see MessageRouter#completeTransfer(Connection)
+	 */
+	public void completeTransfer(Connection con) {
+		if (!isActive()) {
+			return;
+		}
+		this.router.completeTransfer(con);
+		tryNextTransfer();
+	}
+
+	/**
+	 * Lets the router of this host try to start a new transfer right away
+	 * (e.g., when a transfer to this host completes between the update
+	 * intervals). Does nothing if the host is not active.
+	 * @see MessageRouter#tryNextTransfer()
+	 */
+	public void tryNextTransfer() {
+		if (!isActive()) {
+			return;
+		}
+		this.router.tryNextTransfer();
+		this.routerIdle = this.router.isIdle();
 	}
 
 	/**
@@ -338,7 +469,6 @@ public class DTNHost implements Comparable<DTNHost> {
 	public void move(double timeIncrement) {		
 		double possibleMovement;
 		double distance;
-		double dx, dy;
 
 		if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
 			return; 
@@ -350,26 +480,127 @@ public class DTNHost implements Comparable<DTNHost> {
 		}
 
 		possibleMovement = timeIncrement * speed;
-		distance = this.location.distance(this.destination);
+		distance = distanceToDestination();
 
 		while (possibleMovement >= distance) {
 			// node can move past its next destination
-			this.location.setLocation(this.destination); // snap to destination
+			setPosition(destination.getX(), destination.getY()); // snap to it
 			possibleMovement -= distance;
 			if (!setNextWaypoint()) { // get a new waypoint
 				return; // no more waypoints left
 			}
-			distance = this.location.distance(this.destination);
+			distance = distanceToDestination();
 		}
 
 		// move towards the point for possibleMovement amount
-		dx = (possibleMovement/distance) * (this.destination.getX() -
-				this.location.getX());
-		dy = (possibleMovement/distance) * (this.destination.getY() -
-				this.location.getY());
-		this.location.translate(dx, dy);
+		translate(possibleMovement, distance);
 	}	
 
+	/**
+	 * Moves the node like {@link #move(double)} does, but only if the node
+	 * can do the whole move without getting a new waypoint (i.e., without 
+	 * using the movement model or informing the movement listeners). This 
+	 * way nodes can be moved in parallel.
+	 * @param timeIncrement How long time the node moves
+	 * @return True if the node was moved (or it didn't need to be moved),
+	 * false if nothing was done and the node should be moved using 
+	 * {@link #move(double)}
+	 */
+	boolean moveWithinPath(double timeIncrement) {
+		double possibleMovement;
+		double distance;
+
+		if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
+			return true; 
+		}
+		if (this.destination == null) {
+			return false;
+		}
+
+		possibleMovement = timeIncrement * speed;
+		distance = distanceToDestination();
+
+		if (possibleMovement >= distance) {
+			return false; // would pass the destination
+		}
+
+		translate(possibleMovement, distance);
+		return true;
+	}
+
+	/**
+	 * Returns the current velocity of the node and how long the node keeps
+	 * that velocity if it isn't disturbed (e.g., by a new waypoint or the
+	 * end of a wait).
+	 * @param velocity Array where the x and y components of the velocity
+	 * are stored
+	 * @return How long (seconds) the velocity stays the same, or 0 if
+	 * the node's next movement is not known yet
+	 * @see ContactPredictor
+	 */
+	double getVelocity(double[] velocity) {
+		velocity[0] = 0;
+		velocity[1] = 0;
+
+		if (!isActive()) {
+			return Double.MAX_VALUE; // inactive nodes don't move
+		}
+		double timeToMove = this.nextTimeToMove - SimClock.getTime();
+		if (timeToMove > 0) {
+			return timeToMove; // waiting
+		}
+		if (this.destination == null) {
+			return 0;
+		}
+
+		double distance = distanceToDestination();
+		if (distance == 0) {
+			return 0; // at the waypoint, next one is not known yet
+		}
+		if (this.speed == 0) {
+			return Double.MAX_VALUE;
+		}
+		velocity[0] = this.speed * (destination.getX() - 
+				positions.getX(address)) / distance;
+		velocity[1] = this.speed * (destination.getY() - 
+				positions.getY(address)) / distance;
+		return distance / this.speed;
+	}
+
+	/**
+	 * Returns the distance from the current location to the destination
+	 * @return The distance
+	 */
+	private double distanceToDestination() {
+		double dx = positions.getX(address) - destination.getX();
+		double dy = positions.getY(address) - destination.getY();
+		return Math.sqrt(dx*dx + dy*dy);
+	}
+
+	/**
+	 * Moves the node towards the destination
+	 * @param movement How much the node moves
+	 * @param distance Distance to the destination
+	 */
+	private void translate(double movement, double distance) {
+		double x = positions.getX(address);
+		double y = positions.getY(address);
+		double dx = (movement/distance) * (destination.getX() - x);
+		double dy = (movement/distance) * (destination.getY() - y);
+		setPosition(x + dx, y + dy);
+	}
+
+	/**
+	 * Sets the location of the node to the location table and to the
+	 * location coordinate object
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 */
+	private void setPosition(double x, double y) {
+		this.positions.setLocation(address, x, y);
+		this.location.setLocation(x, y);
+	}
+
 	/**
 	 * Sets the next destination and speed to correspond the next waypoint
 	 * on the path.
@@ -405,6 +636,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param to Host the message should be sent to
 	 */
 	public void sendMessage(String id, DTNHost to) {
+		this.routerIdle = false;
 		this.router.sendMessage(id, to);
 	}
 
@@ -416,6 +648,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * {@link MessageRouter#receiveMessage(Message, DTNHost)}
 	 */
 	public int receiveMessage(Message m, DTNHost from) {
+		this.routerIdle = false;
 		int retVal = this.router.receiveMessage(m, from); 
 
 		if (retVal == MessageRouter.RCV_OK) {
@@ -441,6 +674,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param from From who the message was from
 	 */
 	public void messageTransferred(String id, DTNHost from) {
+		this.routerIdle = false;
 		this.router.messageTransferred(id, from);
 	}
 
@@ -452,6 +686,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * would have been ready; or -1 if the number of bytes is not known
 	 */
 	public void messageAborted(String id, DTNHost from, int bytesRemaining) {
+		this.routerIdle = false;
 		this.router.messageAborted(id, from, bytesRemaining);
 	}
 
@@ -460,6 +695,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param m The message to create
 	 */
 	public void createNewMessage(Message m) {
+		this.routerIdle = false;
 		this.router.createNewMessage(m);
 	}
 
@@ -8,6 +8,9 @@ import gui.DTNSimGUI;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import ui.DTNSimTextUI;
 
@@ -20,6 +23,13 @@ public class DTNSim {
 	public static final String BATCH_MODE_FLAG = "-b";
 	/** Delimiter for batch mode index range values (colon) */
 	public static final String RANGE_DELIMETER = ":";
+	/** 
+	 * Number of batch mode runs to run concurrently -setting id 
+	 * ({@value}). Setting is read from the {@link World#SETTINGS_NS} 
+	 * namespace. Every concurrent run has its own {@link SimContext} and
+	 * thread. Default is 1 (runs are run one after another).
+	 */
+	public static final String BATCH_THREADS_S = "batchThreads";
 	
 	/** Name of the static method that all resettable classes must have
 	 * @see #registerForReset(String) */
@@ -78,11 +88,18 @@ public class DTNSim {
 		
 		if (batchMode) {
 			long startTime = System.currentTimeMillis();
-			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
-				print("Run " + (i+1) + "/" + nrofRuns[1]);
-				Settings.setRunIndex(i);
-				resetForNextRun();
-				new DTNSimTextUI().start();
+			Settings s = new Settings(World.SETTINGS_NS);
+			int nrofThreads = 1;
+			if (s.contains(BATCH_THREADS_S)) {
+				nrofThreads = s.getInt(BATCH_THREADS_S);
+			}
+			if (nrofThreads > 1) {
+				runConcurrently(nrofRuns, nrofThreads);
+			}
+			else {
+				for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+					runBatch(i, nrofRuns[1]);
+				}
 			}
 			double duration = (System.currentTimeMillis() - startTime)/1000.0;
 			print("---\nAll done in " + String.format("%.2f", duration) + "s");
@@ -93,6 +110,56 @@ public class DTNSim {
 		}
 	}
 	
+	/**
+	 * Runs one batch mode run in the current simulation context
+	 * @param runIndex Index of the run
+	 * @param lastRun Number of the last run (for progress output)
+	 */
+	private static void runBatch(int runIndex, int lastRun) {
+		print("Run " + (runIndex+1) + "/" + lastRun);
+		Settings.setRunIndex(runIndex);
+		resetForNextRun();
+		new DTNSimTextUI().start();
+	}
+	
+	/**
+	 * Runs batch mode runs concurrently. Every run is run in its own 
+	 * simulation context (see {@link SimContext}) so the results are the
+	 * same as when the runs are run one after another.
+	 * @param nrofRuns The first and (last_run_index - 1) in an array
+	 * @param nrofThreads Maximum number of runs to run at the same time
+	 */
+	private static void runConcurrently(final int[] nrofRuns, 
+			int nrofThreads) {
+		ExecutorService runner = Executors.newFixedThreadPool(nrofThreads);
+		for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+			final int runIndex = i;
+			runner.execute(new Runnable() {
+				public void run() {
+					SimContext.setCurrent(new SimContext());
+					try {
+						runBatch(runIndex, nrofRuns[1]);
+					} catch (Throwable t) {
+						System.err.println("Run " + (runIndex+1) + " failed");
+						t.printStackTrace();
+						System.exit(-1);
+					} finally {
+						SimContext.setCurrent(null);
+					}
+				}
+			});
+		}
+		
+		runner.shutdown();
+		try {
+			while (!runner.awaitTermination(1, TimeUnit.MINUTES)) {
+				// wait until all runs are done
+			}
+		} catch (InterruptedException e) {
+			throw new SimError("Batch runs were interrupted", e);
+		}
+	}
+	
 	/**
 	 * Initializes Settings
 	 * @param confFiles File name paths where to read additional settings 
@@ -140,7 +207,7 @@ public class DTNSim {
 	 * @param className Full name (i.e., containing the packet path) 
 	 * of the class to register. For example: <code>core.SimClock</code> 
 	 */
-	public static void registerForReset(String className) {
+	public static synchronized void registerForReset(String className) {
 		Class<?> c = null;
 		try {
 			c = Class.forName(className);
@@ -160,10 +227,15 @@ public class DTNSim {
 	}
 	
 	/**
-	 * Resets all registered classes.
+	 * Resets all registered classes. Classes that store their state to 
+	 * {@link SimContext} reset the state of the current context.
 	 */
 	private static void resetForNextRun() {
-		for (Class<?> c : resetList) {
+		List<Class<?>> classes;
+		synchronized (DTNSim.class) {
+			classes = new ArrayList<Class<?>>(resetList);
+		}
+		for (Class<?> c : classes) {
 			try {
 				Method m = c.getMethod(RESET_METHOD_NAME);
 				m.invoke(null);
@@ -181,7 +253,7 @@ public class DTNSim {
 	 * @param arg The argument to parse
 	 * @return The first and (last_run_index - 1) in an array
 	 */
-	private static int[] parseNrofRuns(String arg) {
+	static int[] parseNrofRuns(String arg) {
 		int val[] = {0,1};	
 		try {
 			if (arg.contains(RANGE_DELIMETER)) {
@@ -0,0 +1,21 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+/**
+ * Interface for classes that want to be informed when the TTL of a message
+ * they have scheduled a timer for has ended (see
+ * {@link ExpiryWheel#schedule(ExpiryListener, Message)}).
+ */
+public interface ExpiryListener {
+
+	/**
+	 * Method is called when the TTL of a message has ended. The message's
+	 * timer is no longer in the wheel.
+	 * @param m The expired message
+	 */
+	public void messageExpired(Message m);
+
+}
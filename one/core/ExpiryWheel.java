@@ -0,0 +1,277 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel of the messages in the buffers of routers.
+ * A router schedules a timer for a buffered message that has a finite TTL;
+ * the timer is keyed by the message's expiry time (see
+ * {@link Message#getExpiryTime()}). When the simulation time passes the
+ * expiry time, the world takes the timer from the wheel and informs the
+ * timer's listener, which can then drop the message. Advancing the wheel
+ * costs only the expired (and cascaded) timers, not a scan of the
+ * buffers.
+ * <P>
+ * The wheel has {@value #NROF_LEVELS} levels of {@value #NROF_SLOTS} slots.
+ * A slot of the lowest level holds the timers of one tick
+ * ({@value #TICK_LENGTH} seconds) and a slot of each higher level the
+ * timers of a whole round of the level below it. Timers that are further
+ * in the future than the highest level reaches are kept in an overflow list.
+ * </P>
+ * The wheel is owned by the {@link World}; hosts give it to their routers
+ * (see {@link DTNHost#getExpiryWheel()}).
+ */
+public class ExpiryWheel {
+	/** length of one tick of the wheel (simulated seconds) */
+	public static final double TICK_LENGTH = 1.0;
+	/** number of tick bits that select the slot on one level */
+	private static final int SLOT_BITS = 6;
+	/** number of slots on one level */
+	public static final int NROF_SLOTS = 1 << SLOT_BITS;
+	/** number of levels */
+	public static final int NROF_LEVELS = 4;
+
+	/** list heads of the slots (by level and slot) */
+	private Timer[][] slots;
+	/** list head of the timers beyond the highest level */
+	private Timer overflow;
+	/** list head of the timers of the current (or earlier) tick */
+	private Timer due;
+	/** the current tick */
+	private long currentTick;
+	/** number of timers in the slots and the overflow list */
+	private int nrofWaiting;
+
+	/**
+	 * Creates a new, empty wheel whose current tick is the tick of the
+	 * current simulation time
+	 */
+	ExpiryWheel() {
+		this.slots = new Timer[NROF_LEVELS][NROF_SLOTS];
+		for (int i=0; i<NROF_LEVELS; i++) {
+			for (int j=0; j<NROF_SLOTS; j++) {
+				this.slots[i][j] = new Timer(null, null);
+			}
+		}
+		this.overflow = new Timer(null, null);
+		this.due = new Timer(null, null);
+		this.currentTick = toTick(SimClock.getTime());
+		this.nrofWaiting = 0;
+	}
+
+	/**
+	 * Returns the tick of a simulation time
+	 * @param time The time
+	 * @return The tick
+	 */
+	private static long toTick(double time) {
+		return (long)Math.floor(time / TICK_LENGTH);
+	}
+
+	/**
+	 * Schedules a timer for a message in a router's buffer. Messages with
+	 * infinite TTL get no timer.
+	 * @param listener The listener to inform when the message expires
+	 * @param m The message
+	 * @return The timer or null if the message never expires
+	 */
+	public Timer schedule(ExpiryListener listener, Message m) {
+		if (m.getExpiryTime() == Double.MAX_VALUE) {
+			return null;
+		}
+		Timer timer = new Timer(listener, m);
+		insert(timer);
+		return timer;
+	}
+
+	/**
+	 * Cancels a timer. Cancelling a timer that has already expired or been
+	 * cancelled does nothing.
+	 * @param timer The timer to cancel
+	 */
+	public void cancel(Timer timer) {
+		if (timer.prev == null) {
+			return;
+		}
+		if (timer.tick > this.currentTick) {
+			this.nrofWaiting--;
+		}
+		timer.unlink();
+	}
+
+	/**
+	 * Advances the wheel to a simulation time and returns the timers whose
+	 * messages have expired by then (in the order they were scheduled
+	 * within a tick). The returned timers are no longer in the wheel.
+	 * @param time The simulation time
+	 * @return The expired timers
+	 */
+	List<Timer> advance(double time) {
+		long targetTick = toTick(time);
+		if (this.nrofWaiting == 0 && targetTick > this.currentTick) {
+			this.currentTick = targetTick; // nothing to cascade
+		}
+		while (this.currentTick < targetTick) {
+			this.currentTick++;
+			cascade();
+			/* the timers of the new tick are due */
+			int slot = (int)(this.currentTick & (NROF_SLOTS-1));
+			Timer head = this.slots[0][slot];
+			while (head.next != head) {
+				Timer t = head.next;
+				t.unlink();
+				this.nrofWaiting--;
+				this.due.append(t);
+			}
+		}
+
+		if (this.due.next == this.due) {
+			return Collections.emptyList();
+		}
+		List<Timer> expired = new ArrayList<Timer>();
+		for (Timer t = this.due.next; t != this.due; ) {
+			Timer next = t.next;
+			if (t.expiryTime <= time) {
+				t.unlink();
+				expired.add(t);
+			}
+			t = next;
+		}
+		return expired;
+	}
+
+	/**
+	 * Moves the timers of the higher levels' slots that start at the
+	 * current tick to the lower levels
+	 */
+	private void cascade() {
+		int bits = SLOT_BITS * NROF_LEVELS;
+		if ((this.currentTick & ((1L << bits) - 1)) == 0) {
+			reinsert(this.overflow);
+		}
+		for (int level = NROF_LEVELS-1; level > 0; level--) {
+			bits = SLOT_BITS * level;
+			if ((this.currentTick & ((1L << bits) - 1)) == 0) {
+				int slot = (int)((this.currentTick >> bits) & (NROF_SLOTS-1));
+				reinsert(this.slots[level][slot]);
+			}
+		}
+	}
+
+	/**
+	 * Removes all the timers of a list and inserts them again. Timers of
+	 * the overflow list may end up back in the same list.
+	 * @param head Head of the list
+	 */
+	private void reinsert(Timer head) {
+		Timer last = head.prev;
+		while (head.next != head) {
+			Timer t = head.next;
+			t.unlink();
+			this.nrofWaiting--;
+			insert(t);
+			if (t == last) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Inserts a timer to the slot of its tick, to the overflow list or, if
+	 * the tick is not in the future, to the due list
+	 * @param timer The timer
+	 */
+	private void insert(Timer timer) {
+		if (timer.tick <= this.currentTick) {
+			this.due.append(timer);
+			return;
+		}
+
+		this.nrofWaiting++;
+		for (int level = 0; level < NROF_LEVELS; level++) {
+			int bits = SLOT_BITS * (level + 1);
+			/* on the level where the rest of the tick matches */
+			if ((timer.tick >> bits) == (this.currentTick >> bits)) {
+				int slot = (int)((timer.tick >> (bits - SLOT_BITS)) &
+						(NROF_SLOTS-1));
+				this.slots[level][slot].append(timer);
+				return;
+			}
+		}
+		this.overflow.append(timer);
+	}
+
+	/**
+	 * Timer of a message in a router's buffer. Timers are also the nodes
+	 * of the wheel's doubly linked lists.
+	 */
+	public static class Timer {
+		private ExpiryListener listener;
+		private Message message;
+		private double expiryTime;
+		private long tick;
+		private Timer prev;
+		private Timer next;
+
+		/**
+		 * Creates a timer. A timer without a message is a list head.
+		 * @param listener The listener to inform when the message expires
+		 * @param message The message
+		 */
+		private Timer(ExpiryListener listener, Message message) {
+			this.listener = listener;
+			this.message = message;
+			if (message == null) { // list head
+				this.prev = this;
+				this.next = this;
+			}
+			else {
+				this.expiryTime = message.getExpiryTime();
+				this.tick = toTick(this.expiryTime);
+			}
+		}
+
+		/**
+		 * Returns the listener to inform when the message expires
+		 * @return The listener
+		 */
+		public ExpiryListener getListener() {
+			return this.listener;
+		}
+
+		/**
+		 * Returns the message of the timer
+		 * @return The message
+		 */
+		public Message getMessage() {
+			return this.message;
+		}
+
+		/**
+		 * Appends a timer to the list whose head this timer is
+		 * @param t The timer to append
+		 */
+		private void append(Timer t) {
+			t.prev = this.prev;
+			t.next = this;
+			this.prev.next = t;
+			this.prev = t;
+		}
+
+		/**
+		 * Removes this timer from its list
+		 */
+		private void unlink() {
+			this.prev.next = this.next;
+			this.next.prev = this.prev;
+			this.prev = null;
+			this.next = null;
+		}
+	}
+}
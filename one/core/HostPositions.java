@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Locations of the hosts of a simulation run. The coordinates are stored in
+ * primitive arrays that are indexed by the host address, so range checks
+ * and grid updates can read them without going through the hosts'
+ * {@link Coord} objects. The hosts keep the table up to date when they
+ * move (see {@link DTNHost#move(double)}).
+ */
+public class HostPositions {
+	/** initial capacity of the coordinate arrays */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** x coordinates of the hosts (by address) */
+	private double[] xs;
+	/** y coordinates of the hosts (by address) */
+	private double[] ys;
+
+	/**
+	 * Creates an empty position table
+	 */
+	public HostPositions() {
+		this.xs = new double[INITIAL_CAPACITY];
+		this.ys = new double[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Sets the location of a host. The table grows if the address is
+	 * beyond its current capacity; this must not happen while other threads
+	 * are reading or writing the table.
+	 * @param address Address of the host
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 */
+	void setLocation(int address, double x, double y) {
+		if (address >= this.xs.length) {
+			int capacity = Math.max(address + 1, this.xs.length * 2);
+			this.xs = Arrays.copyOf(this.xs, capacity);
+			this.ys = Arrays.copyOf(this.ys, capacity);
+		}
+		this.xs[address] = x;
+		this.ys[address] = y;
+	}
+
+	/**
+	 * Returns the x coordinate of a host
+	 * @param address Address of the host
+	 * @return The x coordinate
+	 */
+	public double getX(int address) {
+		return this.xs[address];
+	}
+
+	/**
+	 * Returns the y coordinate of a host
+	 * @param address Address of the host
+	 * @return The y coordinate
+	 */
+	public double getY(int address) {
+		return this.ys[address];
+	}
+
+	/**
+	 * Returns the squared distance between two hosts
+	 * @param a Address of the first host
+	 * @param b Address of the second host
+	 * @return The squared distance
+	 */
+	public double distanceSquared(int a, int b) {
+		double dx = this.xs[a] - this.xs[b];
+		double dy = this.ys[a] - this.ys[b];
+		return dx*dx + dy*dy;
+	}
+
+	/**
+	 * Returns true if two hosts are at most the given distance apart.
+	 * Compares squared distances, so no square root is calculated.
+	 * @param a Address of the first host
+	 * @param b Address of the second host
+	 * @param distance The maximum distance
+	 * @return True if the hosts are within the distance, false if not
+	 */
+	public boolean isWithinDistance(int a, int b, double distance) {
+		return distanceSquared(a, b) <= distance * distance;
+	}
+}
@@ -4,11 +4,11 @@
  */
 package core;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A message that is created at a node or passed between nodes.
@@ -22,18 +22,23 @@ public class Message implements Comparable<Message> {
 	private String id;
 	/** Size of the message (bytes) */
 	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path; 
-	/** Next unique identifier to be given */
-	private static int nextUniqueId;
+	/** Last node of the path this message has passed. The path nodes are
+	 * immutable, so replicates share the path and only add their own hops */
+	private PathNode path;
+	/** Nodes this message has passed as a list (created on request) */
+	private List<DTNHost> hops;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Index of the message ID (same for all replicates) */
+	private int idIndex;
 	/** The time this message was received */
 	private double timeReceived;
 	/** The time when this message was created */
 	private double timeCreated;
 	/** Initial TTL of the message */
 	private int initTtl;
+	/** The time when the TTL of this message ends */
+	private double expiryTime;
 	
 	/** if a response to this message is required, this is the size of the 
 	 * response message (or 0 if no response is requested) */
@@ -45,6 +50,9 @@ public class Message implements Comparable<Message> {
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
+	/** True if the properties map is shared with other replicates and must
+	 * be copied before it's modified */
+	private boolean propertiesShared;
 	
 	/** Application ID of the application that created the message */
 	private String	appID;
@@ -67,21 +75,38 @@ public class Message implements Comparable<Message> {
 		this.to = to;
 		this.id = id;
 		this.size = size;
-		this.path = new ArrayList<DTNHost>();
-		this.uniqueId = nextUniqueId;
+		this.path = null;
+		SimContext context = SimContext.getCurrent();
+		this.uniqueId = context.nextMessageId++;
+		this.idIndex = context.messageIds.index(id);
 		
 		this.timeCreated = SimClock.getTime();
 		this.timeReceived = this.timeCreated;
 		this.initTtl = INFINITE_TTL;
+		this.expiryTime = Double.MAX_VALUE;
 		this.responseSize = 0;
 		this.requestMsg = null;
 		this.properties = null;
 		this.appID = null;
 		
-		Message.nextUniqueId++;
 		addNodeOnPath(from);
 	}
 	
+	/**
+	 * Creates a replicate of a message (see {@link #replicate()})
+	 * @param m The message to replicate
+	 */
+	private Message(Message m) {
+		this.from = m.from;
+		this.to = m.to;
+		this.id = m.id;
+		this.size = m.size;
+		this.idIndex = m.idIndex;
+		this.uniqueId = SimContext.getCurrent().nextMessageId++;
+		this.timeReceived = SimClock.getTime();
+		copyFrom(m);
+	}
+	
 	/**
 	 * Returns the node this message is originally from
 	 * @return the node this message is originally from
@@ -115,6 +140,81 @@ public class Message implements Comparable<Message> {
 		return this.uniqueId;
 	}
 	
+	/**
+	 * Returns a small integer that identifies the message ID in this
+	 * simulation run. All replicates of a message have the same index and
+	 * different message IDs have different indexes, so the index can be
+	 * used instead of the ID as a key.
+	 * @return The index of the message ID
+	 */
+	public int getIdIndex() {
+		return this.idIndex;
+	}
+	
+	/**
+	 * Returns the index of a message ID (see {@link #getIdIndex()}). The
+	 * IDs of old messages are forgotten when their TTL has ended and no
+	 * router holds them anymore (see {@link #retainIdIndex(int)}).
+	 * @param id The message ID
+	 * @return The index or -1 if no message with the ID has been created
+	 * or the ID has been forgotten
+	 */
+	public static int getIdIndex(String id) {
+		return SimContext.getCurrent().messageIds.getIndex(id);
+	}
+	
+	/**
+	 * Returns the message ID that has the given index
+	 * @param index Index of the message ID (see {@link #getIdIndex()})
+	 * @return The message ID or null if the ID has been forgotten
+	 */
+	public static String getIdOfIndex(int index) {
+		return SimContext.getCurrent().messageIds.getId(index);
+	}
+	
+	/**
+	 * Returns the number of message IDs that have got an index. The indexes
+	 * are given in the order the messages are created, from zero upwards,
+	 * and they are not reused.
+	 * @return The number of message IDs
+	 */
+	public static int getIdCount() {
+		return SimContext.getCurrent().messageIds.size();
+	}
+	
+	/**
+	 * Skips the ID indexes whose messages' TTL ended before the given time.
+	 * Indexes of forgotten IDs are skipped only if all of them ended before
+	 * the time.
+	 * @param from The ID index to start from
+	 * @param time The time
+	 * @return The first index from <CODE>from</CODE> on whose TTL did not
+	 * end before the time (or {@link #getIdCount()})
+	 */
+	public static int skipExpiredIdIndexes(int from, double time) {
+		return SimContext.getCurrent().messageIds.skipExpired(from, time);
+	}
+	
+	/**
+	 * Tells that a router has taken a message with the given ID index to
+	 * its buffers. The ID is not forgotten while some router holds its
+	 * message, so routers can find the message by the ID.
+	 * @param index Index of the message ID (see {@link #getIdIndex()})
+	 * @see #releaseIdIndex(int)
+	 */
+	public static void retainIdIndex(int index) {
+		SimContext.getCurrent().messageIds.changeHolders(index, 1);
+	}
+	
+	/**
+	 * Tells that a router no longer holds a message with the given ID index
+	 * @param index Index of the message ID (see {@link #getIdIndex()})
+	 * @see #retainIdIndex(int)
+	 */
+	public static void releaseIdIndex(int index) {
+		SimContext.getCurrent().messageIds.changeHolders(index, -1);
+	}
+	
 	/**
 	 * Returns the size of the message (in bytes)
 	 * @return the size of the message
@@ -128,15 +228,39 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.path = new PathNode(node, this.path);
+		this.hops = null;
 	}
 	
 	/**
-	 * Returns a list of nodes this message has passed so far
+	 * Returns a list of nodes this message has passed so far. The list
+	 * can't be modified and it doesn't change when new nodes are added on
+	 * the path.
 	 * @return The list as vector
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		if (this.hops == null) {
+			DTNHost[] nodes = new DTNHost[this.path.length];
+			for (PathNode n = this.path; n != null; n = n.previous) {
+				nodes[n.length - 1] = n.node;
+			}
+			this.hops = Collections.unmodifiableList(Arrays.asList(nodes));
+		}
+		return this.hops;
+	}
+	
+	/**
+	 * Returns true if the given node is on the path this message has passed
+	 * @param node The node
+	 * @return True if the message has passed the node, false if not
+	 */
+	public boolean hasPassed(DTNHost node) {
+		for (PathNode n = this.path; n != null; n = n.previous) {
+			if (n.node == node) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
@@ -144,7 +268,7 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return this.path.length -1;
 	}
 	
 	/** 
@@ -164,6 +288,22 @@ public class Message implements Comparable<Message> {
 	}
 	
 	
+	/**
+	 * Returns the initial TTL (minutes) of the message
+	 * @return The initial TTL or {@link #INFINITE_TTL} if the TTL is infinite
+	 */
+	public int getInitTtl() {
+		return this.initTtl;
+	}
+	
+	/**
+	 * Returns the simulation time when the TTL of this message ends
+	 * @return The expiry time or Double.MAX_VALUE if the TTL is infinite
+	 */
+	public double getExpiryTime() {
+		return this.expiryTime;
+	}
+	
 	/**
 	 * Sets the initial TTL (time-to-live) for this message. The initial
 	 * TTL is the TTL when the original message was created. The current TTL
@@ -172,6 +312,10 @@ public class Message implements Comparable<Message> {
 	 */
 	public void setTtl(int ttl) {
 		this.initTtl = ttl;
+		this.expiryTime = (ttl == INFINITE_TTL ? Double.MAX_VALUE :
+			this.timeCreated + ttl * 60.0);
+		SimContext.getCurrent().messageIds.setExpiryTime(this.idIndex,
+				this.expiryTime);
 	}
 	
 	/**
@@ -250,24 +394,27 @@ public class Message implements Comparable<Message> {
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
+	 * Copies message data from other message. If new fields are
 	 * introduced to this class, most likely they should be copied here too
-	 * (unless done in constructor).
+	 * (unless done in constructor). The path and the properties are shared
+	 * with the other message; the properties are copied when either
+	 * message modifies them.
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
+		this.path = m.path;
+		this.hops = m.hops;
 		this.timeCreated = m.timeCreated;
 		this.responseSize = m.responseSize;
 		this.requestMsg  = m.requestMsg;
 		this.initTtl = m.initTtl;
+		this.expiryTime = m.expiryTime;
 		this.appID = m.appID;
 		
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
-			}
+			this.properties = m.properties;
+			this.propertiesShared = true;
+			m.propertiesShared = true;
 		}
 	}
 	
@@ -316,7 +463,12 @@ public class Message implements Comparable<Message> {
 			/* lazy creation to prevent performance overhead for classes
 			   that don't use the property feature  */
 			this.properties = new HashMap<String, Object>();
-		}		
+		}
+		else if (this.propertiesShared) {
+			/* copy on write; the other replicates keep the old map */
+			this.properties = new HashMap<String, Object>(this.properties);
+			this.propertiesShared = false;
+		}
 
 		this.properties.put(key, value);
 	}
@@ -326,9 +478,7 @@ public class Message implements Comparable<Message> {
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
-		m.copyFrom(this);
-		return m;
+		return new Message(this);
 	}
 	
 	/**
@@ -343,7 +493,9 @@ public class Message implements Comparable<Message> {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		nextUniqueId = 0;
+		SimContext context = SimContext.getCurrent();
+		context.nextMessageId = 0;
+		context.messageIds = new MessageIdTable();
 	}
 
 	/**
@@ -360,4 +512,21 @@ public class Message implements Comparable<Message> {
 		this.appID = appID;
 	}
 	
+	/**
+	 * A node on the path of a message. The nodes are immutable and link to
+	 * the previous node, so replicates of a message can share their common
+	 * path.
+	 */
+	private static class PathNode {
+		private final DTNHost node;
+		private final PathNode previous;
+		/** number of nodes on the path up to and including this node */
+		private final int length;
+
+		private PathNode(DTNHost node, PathNode previous) {
+			this.node = node;
+			this.previous = previous;
+			this.length = previous == null ? 1 : previous.length + 1;
+		}
+	}
 }
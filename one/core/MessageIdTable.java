@@ -0,0 +1,210 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Table of the message IDs of a simulation run. Every message ID gets the
+ * next free index when the first message with that ID is created, so the
+ * indexes are given in the order of the messages' creation times. The
+ * table also keeps the time when the TTL of the messages with each ID ends
+ * and the number of routers that hold a message with the ID.
+ * <P>
+ * The IDs at the start of the table are dropped when their TTL has ended
+ * and no router holds their messages anymore, so the table's size is
+ * bounded by the IDs from the oldest live message onwards, not by all the
+ * messages of the run. Indexes are not reused; the IDs are kept in a ring
+ * whose first slot is the oldest kept index.
+ * </P>
+ * @see Message#getIdIndex()
+ */
+class MessageIdTable {
+	/** initial capacity of the ring */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** indexes of the kept IDs */
+	private Map<String, Integer> indexes;
+	/** kept IDs (by index modulo capacity) */
+	private String[] ids;
+	/** times when the messages' TTLs end (by index modulo capacity) */
+	private double[] expiryTimes;
+	/** number of routers that hold a message (by index modulo capacity) */
+	private int[] holders;
+	/** index of the oldest kept ID */
+	private int first;
+	/** index the next new ID gets */
+	private int end;
+	/** latest TTL end time of the dropped IDs */
+	private double droppedExpiryTime;
+
+	/**
+	 * Creates an empty table
+	 */
+	MessageIdTable() {
+		this.indexes = new HashMap<String, Integer>();
+		this.ids = new String[INITIAL_CAPACITY];
+		this.expiryTimes = new double[INITIAL_CAPACITY];
+		this.holders = new int[INITIAL_CAPACITY];
+		this.first = 0;
+		this.end = 0;
+		this.droppedExpiryTime = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Returns the index of an ID, giving the ID the next free index if it
+	 * doesn't have one yet. A new ID's TTL is infinite.
+	 * @param id The ID
+	 * @return The index
+	 */
+	int index(String id) {
+		Integer index = this.indexes.get(id);
+		if (index != null) {
+			return index;
+		}
+
+		dropUnused();
+		if (this.end - this.first == this.ids.length) {
+			grow();
+		}
+		int i = this.end++;
+		int slot = i & (this.ids.length - 1);
+		this.indexes.put(id, i);
+		this.ids[slot] = id;
+		this.expiryTimes[slot] = Double.MAX_VALUE;
+		this.holders[slot] = 0;
+		return i;
+	}
+
+	/**
+	 * Drops the IDs at the start of the table whose TTL has ended and whose
+	 * messages no router holds
+	 */
+	private void dropUnused() {
+		double now = SimClock.getTime();
+		int mask = this.ids.length - 1;
+		while (this.first < this.end) {
+			int slot = this.first & mask;
+			if (this.holders[slot] > 0 || this.expiryTimes[slot] >= now) {
+				break;
+			}
+			this.indexes.remove(this.ids[slot]);
+			this.ids[slot] = null;
+			this.droppedExpiryTime = Math.max(this.droppedExpiryTime,
+					this.expiryTimes[slot]);
+			this.first++;
+		}
+	}
+
+	/**
+	 * Doubles the capacity of the ring
+	 */
+	private void grow() {
+		int capacity = this.ids.length * 2;
+		String[] newIds = new String[capacity];
+		double[] newTimes = new double[capacity];
+		int[] newHolders = new int[capacity];
+		int oldMask = this.ids.length - 1;
+		int newMask = capacity - 1;
+		for (int i = this.first; i < this.end; i++) {
+			newIds[i & newMask] = this.ids[i & oldMask];
+			newTimes[i & newMask] = this.expiryTimes[i & oldMask];
+			newHolders[i & newMask] = this.holders[i & oldMask];
+		}
+		this.ids = newIds;
+		this.expiryTimes = newTimes;
+		this.holders = newHolders;
+	}
+
+	/**
+	 * Returns true if the table still has the ID of the given index
+	 * @param index The index
+	 * @return True if the ID is kept, false if it was dropped
+	 */
+	private boolean isKept(int index) {
+		return index >= this.first && index < this.end;
+	}
+
+	/**
+	 * Returns the index of an ID
+	 * @param id The ID
+	 * @return The index or -1 if the ID has no index (or it was dropped)
+	 */
+	int getIndex(String id) {
+		Integer index = this.indexes.get(id);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the ID with the given index
+	 * @param index The index
+	 * @return The ID or null if it was dropped
+	 */
+	String getId(int index) {
+		if (!isKept(index)) {
+			return null;
+		}
+		return this.ids[index & (this.ids.length - 1)];
+	}
+
+	/**
+	 * Returns the number of indexes given so far, including the dropped
+	 * ones
+	 * @return The number of indexes
+	 */
+	int size() {
+		return this.end;
+	}
+
+	/**
+	 * Sets the time when the TTL of the messages with an ID ends. Does
+	 * nothing if the ID was dropped.
+	 * @param index Index of the ID
+	 * @param time The time (Double.MAX_VALUE for infinite TTL)
+	 */
+	void setExpiryTime(int index, double time) {
+		if (isKept(index)) {
+			this.expiryTimes[index & (this.ids.length - 1)] = time;
+		}
+	}
+
+	/**
+	 * Returns the first index, starting from the given one, whose TTL did
+	 * not end before the given time. All the IDs from the given index up
+	 * to the returned index have expired before the time. The dropped IDs
+	 * are skipped only if all of them expired before the time.
+	 * @param from The index to start from
+	 * @param time The time
+	 * @return The index
+	 */
+	int skipExpired(int from, double time) {
+		if (from < this.first) {
+			if (this.droppedExpiryTime >= time) {
+				return from;
+			}
+			from = this.first;
+		}
+		int mask = this.ids.length - 1;
+		while (from < this.end && this.expiryTimes[from & mask] < time) {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * Changes the number of routers that hold a message with an ID. An ID
+	 * isn't dropped while some router holds its message. Does nothing if
+	 * the ID was dropped.
+	 * @param index Index of the ID
+	 * @param change +1 when a router takes a message, -1 when it lets the
+	 * message go
+	 */
+	void changeHolders(int index, int change) {
+		if (isKept(index)) {
+			this.holders[index & (this.ids.length - 1)] += change;
+		}
+	}
+}
@@ -6,11 +6,16 @@ package core;
 
 import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
+import interfaces.SparseConnectivityGrid;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
+import movement.MovementModel;
+
 /**
  * Network interface of a DTNHost. Takes care of connectivity among hosts.
  */
@@ -34,8 +39,6 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	
 	private static final int CON_UP = 1;
 	private static final int CON_DOWN = 2;
-	private static int nextAddress = 0;
-	private static Random rng;
 	protected DTNHost host = null;
 
 	protected String interfacetype;
@@ -48,6 +51,11 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
+	/** interfaces that were in range when the contacts were last looked up
+	 * (see {@link #setContacts(List, double)}), or null if n/a */
+	private List<NetworkInterface> contacts;
+	/** transmit range that was used for looking up the contacts */
+	private double contactsRange;
 
 
 	static {
@@ -59,8 +67,9 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		nextAddress = 0;
-		rng = new Random(0);
+		SimContext context = SimContext.getCurrent();
+		context.nextInterfaceAddress = 0;
+		context.interfaceRng = new Random(0);
 	}
 	
 	/**
@@ -68,7 +77,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface(Settings s) {
 		this.interfacetype = s.getNameSpace();
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
 		this.address = getNextNetAddress();
 
 		this.transmitRange = s.getDouble(TRANSMIT_RANGE_S);
@@ -87,7 +96,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface() {
 		this.interfacetype = "Default";
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
 		this.address = getNextNetAddress();
 	}
 	
@@ -95,7 +104,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * copy constructor
 	 */
 	public NetworkInterface(NetworkInterface ni) {
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList();
 		this.address = getNextNetAddress();
 		this.host = ni.host;
 		this.cListeners = ni.cListeners;
@@ -104,7 +113,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.transmitSpeed = ni.transmitSpeed;
 		
 		/* draw lastScanTime of [0 -- scanInterval] */
-		this.lastScanTime = rng.nextDouble() * scanInterval;
+		this.lastScanTime = SimContext.getCurrent().interfaceRng.nextDouble() *
+			scanInterval;
 	}
 
 	/**
@@ -124,11 +134,43 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		comBus.subscribe(RANGE_ID, this);
 		comBus.subscribe(SPEED_ID, this);
 		
-		optimizer = ConnectivityGrid.ConnectivityGridFactory(
-				this.interfacetype.hashCode(), transmitRange);
+		optimizer = getOptimizer(this.interfacetype.hashCode(), transmitRange);
 		optimizer.addInterface(this);		
 	}
 
+	/**
+	 * Returns the connectivity optimizer for the interfaces with the given
+	 * key. The optimizer is a sparse grid if the {@link World#SPARSE_GRID_S}
+	 * setting is true, or if it is not set and a full grid for the world
+	 * would have more than {@link World#MAX_DENSE_GRID_CELLS} cells.
+	 * @param key Key of the interfaces' type
+	 * @param cellSize Size of the grid cells
+	 * @return The optimizer
+	 */
+	private static ConnectivityOptimizer getOptimizer(int key, 
+			double cellSize) {
+		Settings s = new Settings(World.SETTINGS_NS);
+		boolean sparse;
+
+		if (s.contains(World.SPARSE_GRID_S)) {
+			sparse = s.getBoolean(World.SPARSE_GRID_S);
+		}
+		else {
+			int[] worldSize = new Settings(MovementModel.MOVEMENT_MODEL_NS).
+				getCsvInts(MovementModel.WORLD_SIZE, 2);
+			int size = Math.max(1, (int)Math.ceil(cellSize));
+			long nrofCells = (long)(worldSize[0]/size + 3) * 
+				(worldSize[1]/size + 3);
+			sparse = nrofCells > World.MAX_DENSE_GRID_CELLS;
+		}
+
+		if (sparse) {
+			return SparseConnectivityGrid.SparseConnectivityGridFactory(key,
+					cellSize);
+		}
+		return ConnectivityGrid.ConnectivityGridFactory(key, cellSize);
+	}
+
 	/**
 	 * For checking what interface type this interface is
 	 */
@@ -150,7 +192,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * @return The next address.
 	 */
 	private synchronized static int getNextNetAddress() {
-		return nextAddress++;	
+		return SimContext.getCurrent().nextInterfaceAddress++;	
 	}
 
 	/**
@@ -218,6 +260,17 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public abstract void connect(NetworkInterface anotherInterface);
 
+	/**
+	 * Returns the scheduler that the connections of this interface should
+	 * use for finalizing their transfers at the exact completion time
+	 * (see {@link CBRConnection})
+	 * @return The world of this interface's host or null if the host is
+	 * not in a world
+	 */
+	protected TransferCompletionScheduler getTransferCompletionScheduler() {
+		return this.host.getWorld();
+	}
+
 	/**
 	 * Connects this host to another host. The derived class should check 
 	 * that all pre-requisites for making a connection are satisfied before 
@@ -240,7 +293,9 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 
 	/**
 	 * Disconnects this host from another host.  The derived class should
-	 * make the decision whether to disconnect or not
+	 * make the decision whether to disconnect or not. The connection is
+	 * removed from the other interface's connections; the derived class
+	 * must remove it from this interface's connections.
 	 * @param con The connection to tear down
 	 */
 	protected void disconnect(Connection con, 
@@ -271,8 +326,9 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			smallerRange = myRange;
 		}
 
-		return this.host.getLocation().distance(
-				anotherInterface.getHost().getLocation()) <= smallerRange;
+		return this.host.getPositions().isWithinDistance(
+				this.host.getAddress(), anotherInterface.getHost().getAddress(),
+				smallerRange);
 	}
 	
 	/**
@@ -290,6 +346,58 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return false;
 	}
 	
+	/**
+	 * Sets the interfaces that were found to be within range of this
+	 * interface at the current locations of the hosts. If the contacts are
+	 * set, the next {@link #getNearInterfaces()} call only returns those of
+	 * the near interfaces that are also contacts.
+	 * @param contacts The interfaces in range (including this interface)
+	 * @param range The transmit range that was used for the lookup
+	 * @see ParallelUpdater
+	 */
+	void setContacts(List<NetworkInterface> contacts, double range) {
+		this.contacts = contacts;
+		this.contactsRange = range;
+	}
+
+	/**
+	 * Returns the interfaces that this interface should try to connect to.
+	 * If the contacts have been looked up beforehand (and the range hasn't
+	 * changed since), returns only those of the near interfaces that were in
+	 * range, in the same order as the optimizer returns them.
+	 * @return The interfaces to try to connect to
+	 */
+	protected Collection<NetworkInterface> getNearInterfaces() {
+		List<NetworkInterface> found = this.contacts;
+		this.contacts = null; // valid only for one update
+
+		if (found != null && this.contactsRange == this.transmitRange) {
+			return optimizer.getNearInterfaces(this, found);
+		}
+		return optimizer.getNearInterfaces(this);
+	}
+
+	/**
+	 * Calls the visitor for every interface that {@link #getNearInterfaces()}
+	 * would return, in the same order. Unless the contacts have been looked
+	 * up beforehand, the optimizer visits the interfaces without creating
+	 * any collections.
+	 * @param visitor The visitor to call for the interfaces
+	 */
+	protected void visitNearInterfaces(
+			ConnectivityOptimizer.InterfaceVisitor visitor) {
+		List<NetworkInterface> found = this.contacts;
+		this.contacts = null; // valid only for one update
+
+		if (found != null && this.contactsRange == this.transmitRange) {
+			for (NetworkInterface ni : optimizer.getNearInterfaces(this, found)) {
+				visitor.visit(ni);
+			}
+			return;
+		}
+		optimizer.visitNearInterfaces(this, visitor);
+	}
+
 	/**
 	 * Makes sure that a value is positive
 	 * @param value Value to check
@@ -384,21 +492,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	private void removeConnectionByIndex(int index, 
 			NetworkInterface anotherInterface) {
-		Connection con = this.connections.get(index);
-		DTNHost anotherNode = anotherInterface.getHost();
-		con.setUpState(false);
-		notifyConnectionListeners(CON_DOWN, anotherNode);
-
-		// tear down bidirectional connection
-		if (!anotherInterface.getConnections().remove(con)) {
-			throw new SimError("No connection " + con + " found in " +
-					anotherNode);   
-		}
-
-		this.host.connectionDown(con);
-		anotherNode.connectionDown(con);
-
-		connections.remove(index);
+		disconnect(this.connections.get(index), anotherInterface);
+		this.connections.remove(index);
 	}
 
 	/**
@@ -425,4 +520,42 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			". Connections: " +	this.connections;
 	}
 
+	/**
+	 * The connections of an interface. Every change to the list is also
+	 * made to the connections of the host (see
+	 * {@link DTNHost#getConnections()}), so the host's list stays in sync
+	 * also when derived classes modify the list directly.
+	 */
+	private class ConnectionList extends AbstractList<Connection> {
+		private ArrayList<Connection> list = new ArrayList<Connection>();
+
+		public Connection get(int index) {
+			return this.list.get(index);
+		}
+
+		public int size() {
+			return this.list.size();
+		}
+
+		public void add(int index, Connection con) {
+			this.list.add(index, con);
+			this.modCount++;
+			host.connectionAdded(NetworkInterface.this, index, con);
+		}
+
+		public Connection remove(int index) {
+			Connection con = this.list.remove(index);
+			this.modCount++;
+			host.connectionRemoved(con);
+			return con;
+		}
+
+		public Connection set(int index, Connection con) {
+			Connection old = this.list.set(index, con);
+			host.connectionRemoved(old);
+			host.connectionAdded(NetworkInterface.this, index, con);
+			return old;
+		}
+	}
+
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the read-only parts of {@link World}'s update cycle in a pool of
+ * worker threads. All the work that changes the shared state of the
+ * simulation (movement models, connections, routers, listeners) is still
+ * done by the simulation thread in the same order as in the serial mode, so
+ * the results of a simulation run do not depend on the number of threads.
+ * <P>
+ * Hosts are moved in two phases: first all hosts that can stay on their
+ * current path segment are moved in parallel, then the rest are moved in
+ * the simulation thread in the host order. Connectivity is likewise
+ * updated in two phases: first every interface's possible contacts are
+ * looked up in parallel from the current locations (see
+ * {@link NetworkInterface#getNearInterfaces()}) and then the hosts are
+ * updated (connected, disconnected, routed) one by one as before.
+ * </P>
+ */
+public class ParallelUpdater {
+	/** how many tasks per thread the hosts are split into */
+	private static final int TASKS_PER_THREAD = 4;
+
+	/** the worker threads (shared by all simulation runs in the JVM) */
+	private static ThreadPoolExecutor executor;
+	private int nrofTasks;
+
+	/**
+	 * Creates a new updater that uses the given number of threads
+	 * @param nrofThreads Number of worker threads
+	 */
+	public ParallelUpdater(int nrofThreads) {
+		this.nrofTasks = nrofThreads * TASKS_PER_THREAD;
+		initExecutor(nrofThreads);
+	}
+
+	/**
+	 * Creates the worker threads or adds more threads if there are less
+	 * than requested
+	 * @param nrofThreads Number of worker threads
+	 */
+	private static synchronized void initExecutor(int nrofThreads) {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(nrofThreads, nrofThreads, 0, 
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), 
+					new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ParallelUpdater");
+					t.setDaemon(true); // don't keep the VM alive after the sim
+					return t;
+				}
+			});
+		}
+		else if (executor.getMaximumPoolSize() < nrofThreads) {
+			executor.setMaximumPoolSize(nrofThreads);
+			executor.setCorePoolSize(nrofThreads);
+		}
+	}
+
+	/**
+	 * Moves all hosts for the given amount of time. The end result is the
+	 * same as calling {@link DTNHost#move(double)} for every host in
+	 * the list order.
+	 * @param hosts The hosts to move
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	public void moveHosts(final List<DTNHost> hosts,
+			final double timeIncrement) {
+		final boolean[] moved = new boolean[hosts.size()];
+
+		runForAll(hosts.size(), new RangeTask() {
+			public void run(int from, int to) {
+				for (int i=from; i<to; i++) {
+					moved[i] = hosts.get(i).moveWithinPath(timeIncrement);
+				}
+			}
+		});
+
+		/* hosts that need a new waypoint use the (shared) movement models
+		 * and listeners -> move them in the serial order */
+		for (int i=0, n=hosts.size(); i<n; i++) {
+			if (!moved[i]) {
+				hosts.get(i).move(timeIncrement);
+			}
+		}
+	}
+
+	/**
+	 * Looks up the possible contacts of all the interfaces of the given
+	 * hosts based on the hosts' current locations. The results are valid
+	 * for one {@link NetworkInterface#update()} call or until the hosts
+	 * move.
+	 * @param hosts The hosts whose interfaces' contacts are looked up
+	 */
+	public void findContacts(final List<DTNHost> hosts) {
+		double maxRange = 0;
+		for (DTNHost h : hosts) {
+			for (NetworkInterface ni : h.getInterfaces()) {
+				if (ni.getTransmitRange() > maxRange) {
+					maxRange = ni.getTransmitRange();
+				}
+			}
+		}
+		if (maxRange <= 0) {
+			maxRange = 1;
+		}
+
+		/* put interfaces to buckets whose edge is the largest range so that
+		 * all contacts of an interface are in the neighboring buckets */
+		final double bucketSize = maxRange;
+		final HashMap<Long, List<NetworkInterface>> buckets =
+			new HashMap<Long, List<NetworkInterface>>();
+		for (DTNHost h : hosts) {
+			HostPositions positions = h.getPositions();
+			int address = h.getAddress();
+			for (NetworkInterface ni : h.getInterfaces()) {
+				Long key = bucketKey(
+						(long)Math.floor(positions.getX(address) / bucketSize),
+						(long)Math.floor(positions.getY(address) / bucketSize));
+				List<NetworkInterface> bucket = buckets.get(key);
+				if (bucket == null) {
+					bucket = new ArrayList<NetworkInterface>();
+					buckets.put(key, bucket);
+				}
+				bucket.add(ni);
+			}
+		}
+
+		runForAll(hosts.size(), new RangeTask() {
+			public void run(int from, int to) {
+				for (int i=from; i<to; i++) {
+					for (NetworkInterface ni : hosts.get(i).getInterfaces()) {
+						findContacts(ni, buckets, bucketSize);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Finds the interfaces that are of the same type as the given interface
+	 * and within its range (including the interface itself) and stores
+	 * them to the interface.
+	 * @param ni The interface whose contacts are searched
+	 * @param buckets The interfaces in buckets
+	 * @param bucketSize Edge length of a bucket
+	 */
+	private void findContacts(NetworkInterface ni,
+			HashMap<Long, List<NetworkInterface>> buckets, double bucketSize) {
+		List<NetworkInterface> contacts = new ArrayList<NetworkInterface>();
+		HostPositions positions = ni.getHost().getPositions();
+		int address = ni.getHost().getAddress();
+		double range = ni.getTransmitRange();
+		long col = (long)Math.floor(positions.getX(address) / bucketSize);
+		long row = (long)Math.floor(positions.getY(address) / bucketSize);
+
+		for (long x = col-1; x <= col+1; x++) {
+			for (long y = row-1; y <= row+1; y++) {
+				List<NetworkInterface> bucket = buckets.get(bucketKey(x, y));
+				if (bucket == null) {
+					continue;
+				}
+				for (NetworkInterface other : bucket) {
+					if (other.optimizer == ni.optimizer &&
+							positions.isWithinDistance(address,
+									other.getHost().getAddress(), range)) {
+						contacts.add(other);
+					}
+				}
+			}
+		}
+
+		ni.setContacts(contacts, range);
+	}
+
+	/**
+	 * Returns the hash map key for a bucket
+	 * @param x Column of the bucket
+	 * @param y Row of the bucket
+	 * @return The key
+	 */
+	private static Long bucketKey(long x, long y) {
+		return (x << 32) ^ (y & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Splits range [0, n) to tasks, runs them in the worker threads and
+	 * waits until all of them are done.
+	 * @param n Size of the range
+	 * @param task The task to run for the sub ranges
+	 */
+	private void runForAll(int n, final RangeTask task) {
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		final SimContext context = SimContext.getCurrent();
+		int step = Math.max(1, (n + nrofTasks - 1) / nrofTasks);
+
+		for (int i=0; i<n; i+=step) {
+			final int from = i;
+			final int to = Math.min(n, i + step);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					SimContext.setCurrent(context); // e.g. for the sim time
+					try {
+						task.run(from, to);
+					} finally {
+						SimContext.setCurrent(null);
+					}
+					return null;
+				}
+			});
+		}
+
+		try {
+			for (Future<Object> f : executor.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			throw new SimError("Parallel update was interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error)cause; // e.g. failed assertions
+			}
+			throw new SimError("Parallel update failed", (Exception)cause);
+		}
+	}
+
+	/**
+	 * Task that is run for a sub range of hosts
+	 */
+	private interface RangeTask {
+		/**
+		 * Runs the task for a range of indexes
+		 * @param from The first index (inclusive)
+		 * @param to The last index (exclusive)
+		 */
+		public void run(int from, int to);
+	}
+}
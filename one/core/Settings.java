@@ -12,7 +12,6 @@ import java.io.PrintStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.Set;
@@ -51,12 +50,18 @@ public class Settings {
 	 * @see #valueFillString(String) */
 	public static final String FILL_DELIMITER = "%%";
 	
+	/** start of a run array ({@value}) */
+	private static final String RUN_ARRAY_START = "[";
+	/** end of a run array ({@value}) */
+	private static final String RUN_ARRAY_END = "]";
+	/** delimiter of the values in a run array ({@value}) */
+	private static final String RUN_ARRAY_DELIM = ";";
+	/** minimum length of a run array ({@value}), e.g. "[v]" */
+	private static final int RUN_ARRAY_MIN_LENGTH = 3;
+	
 	/** Stream where all read settings are written to */
 	private static PrintStream out = null;
-	private static Set<String> writtenSettings = new HashSet<String>();
 	
-	/** run index for run-specific settings */
-	private static int runIndex = 0;
 	private String namespace = null; // namespace to look the settings from
 	private String secondaryNamespace = null;
 	private Stack<String> oldNamespaces;
@@ -93,12 +98,15 @@ public class Settings {
 	 * To disable whole run-index-thing, set index to value smaller than
 	 * zero (e.g. -1). When disabled, run-arrays are returned as normal values,
 	 * including the brackets.
+	 * <P>The run index is stored to the current simulation context (see
+	 * {@link SimContext}), so concurrent runs can use different indexes.</P>
 	 * @param index The run index to use for subsequent settings calls, or
 	 * -1 to disable run indexing
 	 */
 	public static void setRunIndex(int index) {
-		runIndex = index;
-		writtenSettings.clear();
+		SimContext context = SimContext.getCurrent();
+		context.runIndex = index;
+		context.writtenSettings.clear();
 	}
 	
 	/**
@@ -254,9 +262,11 @@ public class Settings {
 	 * @param setting The string to write
 	 */
 	private static void outputSetting(String setting) {
+		SimContext context = SimContext.getCurrent();
+		Set<String> writtenSettings = context.writtenSettings;
 		if (out != null && !writtenSettings.contains(setting)) {
 			if (writtenSettings.size() == 0) {
-				out.println("# Settings for run " + (runIndex + 1));
+				out.println("# Settings for run " + (context.runIndex + 1));
 			}
 			out.println(setting);
 			writtenSettings.add(setting);
@@ -349,26 +359,72 @@ public class Settings {
 	 * @return The runIndex % arrayLength'th value of the run array
 	 */
 	private static String parseRunSetting(String value) {
-		final String RUN_ARRAY_START = "[";
-		final String RUN_ARRAY_END = "]";
-		final String RUN_ARRAY_DELIM = ";";
-		final int MIN_LENGTH = 3; // minimum run is one value. e.g. "[v]"
+		int runIndex = SimContext.getCurrent().runIndex;
 		
-		if (!value.startsWith(RUN_ARRAY_START) || 
-			!value.endsWith(RUN_ARRAY_END) || 
-			runIndex < 0 ||
-			value.length() < MIN_LENGTH) {
+		if (!isRunArray(value) || runIndex < 0) {
 			return value; // standard format setting -> return
 		}
 		
-		value = value.substring(1,value.length()-1); // remove brackets
-		String[] valueArr = value.split(RUN_ARRAY_DELIM);
+		String[] valueArr = splitRunArray(value);
 		int arrIndex = runIndex % valueArr.length;
 		value = valueArr[arrIndex].trim();
 
 		return value;
 	}
 	
+	/**
+	 * Returns true if the given setting value is a run array
+	 * @param value The (trimmed) value
+	 * @return true if the value is a run array
+	 */
+	private static boolean isRunArray(String value) {
+		return value.startsWith(RUN_ARRAY_START) && 
+			value.endsWith(RUN_ARRAY_END) &&
+			value.length() >= RUN_ARRAY_MIN_LENGTH;
+	}
+	
+	/**
+	 * Splits a run array to its values
+	 * @param value The run array
+	 * @return The values of the array (not trimmed)
+	 */
+	private static String[] splitRunArray(String value) {
+		value = value.substring(1,value.length()-1); // remove brackets
+		return value.split(RUN_ARRAY_DELIM);
+	}
+	
+	/**
+	 * Returns the number of different runs that the run arrays of the
+	 * current settings define, i.e., the least common multiple of the 
+	 * lengths of all run arrays. After that many runs the run indexes 
+	 * wrap around in all the arrays (see {@link #setRunIndex(int)}).
+	 * @return The number of different runs (1 if there are no run arrays)
+	 */
+	public static int getNrofDifferentRuns() {
+		int nrofRuns = 1;
+		if (props == null) {
+			init(null);
+		}
+		
+		for (String key : props.stringPropertyNames()) {
+			String value = props.getProperty(key).trim();
+			if (!isRunArray(value)) {
+				continue;
+			}
+			int length = splitRunArray(value).length;
+			int a = nrofRuns;
+			int b = length;
+			while (b != 0) { // greatest common divisor
+				int t = a % b;
+				a = b;
+				b = t;
+			}
+			nrofRuns = nrofRuns / a * length;
+		}
+		
+		return nrofRuns;
+	}
+	
 	/**
 	 * Returns the setting name appended to namespace name(s) on a String 
 	 * (for error messages)
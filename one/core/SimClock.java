@@ -9,8 +9,7 @@ package core;
  * Wall clock for checking the simulation time.
  */
 public class SimClock {
-	private static double clockTime = 0.0;
-	private static SimClock clock = null;
+	private double clockTime = 0.0;
 	
 	private SimClock() {}
 	
@@ -21,13 +20,15 @@ public class SimClock {
 	
 	/**
 	 * Get the instance of the class that can also change the time.
+	 * Every simulation context (see {@link SimContext}) has its own clock.
 	 * @return The instance of this clock
 	 */
 	public static SimClock getInstance() {
-		if (clock == null) {
-			clock = new SimClock();
+		SimContext context = SimContext.getCurrent();
+		if (context.clock == null) {
+			context.clock = new SimClock();
 		}
-		return clock;
+		return context.clock;
 	}
 	
 	/**
@@ -35,7 +36,7 @@ public class SimClock {
 	 * @return Time as a double
 	 */
 	public static double getTime() {
-		return clockTime;
+		return getInstance().clockTime;
 	}
 	
 	/**
@@ -43,7 +44,7 @@ public class SimClock {
 	 * @return Time as integer
 	 */
 	public static int getIntTime() {
-		return (int)Math.round(clockTime);
+		return (int)Math.round(getTime());
 	}
 	
 	/**
@@ -71,9 +72,9 @@ public class SimClock {
 	}
 	
 	/**
-	 * Resets the static fields of the class
+	 * Resets the time of the current context's clock
 	 */
 	public static void reset() {
-		clockTime = 0;
+		getInstance().clockTime = 0;
 	}
 }
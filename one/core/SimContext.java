@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Context of a simulation run. The context owns the state that the simulator
+ * would otherwise keep in static fields (simulation time, run index,
+ * address and ID counters, the scenario etc.), so several simulation runs
+ * can be run concurrently in the same JVM; each in its own thread and
+ * context.
+ * <P>
+ * A thread uses the context that has been set for it using
+ * {@link #setCurrent(SimContext)}. All threads without their own context
+ * share the default context, so a single simulation run (and the GUI) work
+ * as if all the state was static. Code that hands work of a simulation run
+ * to other threads must set the run's context for those threads.
+ * </P>
+ * <P>
+ * Classes outside the core package store their per run state to the
+ * context using {@link #setState(Class, Object)}. State that is stored to
+ * the context should be reset by the class' reset method (see
+ * {@link DTNSim#registerForReset(String)}).
+ * </P>
+ */
+public class SimContext {
+	/** context of the threads that have no context of their own */
+	private static final SimContext defaultContext = new SimContext();
+	/** context of the current thread (if set) */
+	private static final ThreadLocal<SimContext> current =
+		new ThreadLocal<SimContext>();
+
+	/** simulation clock of the run (created on first request) */
+	SimClock clock;
+	/** run index for run-specific settings */
+	int runIndex;
+	/** settings that have been written to the settings output in this run */
+	Set<String> writtenSettings;
+	/** address of the next host */
+	int nextHostAddress;
+	/** locations of the hosts (by address) */
+	HostPositions hostPositions;
+	/** address of the next network interface */
+	int nextInterfaceAddress;
+	/** random number generator for network interfaces */
+	Random interfaceRng;
+	/** unique ID of the next message */
+	int nextMessageId;
+	/** indexes of the message IDs (see {@link Message#getIdIndex()}) */
+	MessageIdTable messageIds;
+	/** scenario of the run (or null if not created yet) */
+	SimScenario scenario;
+
+	/** state objects of other classes (by the class) */
+	private Map<Class<?>, Object> states;
+
+	/**
+	 * Creates a new context with initial state
+	 */
+	public SimContext() {
+		this.runIndex = 0;
+		this.writtenSettings = new HashSet<String>();
+		this.interfaceRng = new Random(0);
+		this.hostPositions = new HostPositions();
+		this.messageIds = new MessageIdTable();
+		this.states = new HashMap<Class<?>, Object>();
+	}
+
+	/**
+	 * Returns the context of the current thread
+	 * @return The context of the current thread or the default context if
+	 * the thread has no context set
+	 */
+	public static SimContext getCurrent() {
+		SimContext context = current.get();
+		if (context == null) {
+			return defaultContext;
+		}
+		return context;
+	}
+
+	/**
+	 * Sets the context for the current thread
+	 * @param context The context to use or null to use the default context
+	 */
+	public static void setCurrent(SimContext context) {
+		if (context == null) {
+			current.remove();
+		}
+		else {
+			current.set(context);
+		}
+	}
+
+	/**
+	 * Returns the state object that the given class has stored
+	 * @param owner The class whose state is requested
+	 * @return The state object or null if the class hasn't stored any state
+	 * to this context
+	 */
+	public Object getState(Class<?> owner) {
+		return this.states.get(owner);
+	}
+
+	/**
+	 * Stores a state object of a class to this context. Any old state
+	 * object of the class is replaced.
+	 * @param owner The class whose state is stored
+	 * @param state The state object or null to remove the state
+	 */
+	public void setState(Class<?> owner, Object state) {
+		if (state == null) {
+			this.states.remove(owner);
+		}
+		else {
+			this.states.put(owner, state);
+		}
+	}
+}
@@ -22,9 +22,6 @@ import routing.MessageRouter;
  */
 public class SimScenario implements Serializable {
 	
-	/** a way to get a hold of this... */	
-	private static SimScenario myinstance=null;
-
 	/** namespace of scenario settings ({@value})*/
 	public static final String SCENARIO_NS = "Scenario";
 	/** number of host groups -setting id ({@value})*/
@@ -126,7 +123,7 @@ public class SimScenario implements Serializable {
 	}
 	
 	public static void reset() {
-		myinstance = null;
+		SimContext.getCurrent().scenario = null;
 	}
 
 	/**
@@ -169,13 +166,15 @@ public class SimScenario implements Serializable {
 	}
 	
 	/**
-	 * Returns the SimScenario instance and creates one if it doesn't exist yet
+	 * Returns the SimScenario instance of the current simulation context
+	 * (see {@link SimContext}) and creates one if it doesn't exist yet
 	 */
 	public static SimScenario getInstance() {
-		if (myinstance == null) {
-			myinstance = new SimScenario();
+		SimContext context = SimContext.getCurrent();
+		if (context.scenario == null) {
+			context.scenario = new SimScenario();
 		}
-		return myinstance;
+		return context.scenario;
 	}
 
 	/**
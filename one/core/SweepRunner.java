@@ -0,0 +1,471 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import report.Report;
+import ui.DTNSimUI;
+
+/**
+ * Runs a sweep of simulation runs in a pool of child processes. The runs of
+ * the sweep are the run indexes of the run arrays in the settings (see
+ * {@link Settings#setRunIndex(int)}) and every run is run in batch mode in a
+ * JVM of its own (see {@link DTNSim}). Every finished run and its report
+ * files are recorded to a manifest file. If the same sweep is started again
+ * with the same manifest, the runs whose report files already exist are
+ * skipped; so an interrupted sweep continues where it stopped.
+ * <P>
+ * Usage: <CODE>java core.SweepRunner [-p processes] [-m manifest]
+ * [-b runs] conf-files</CODE>
+ * </P>
+ * <P>
+ * By default, all the different runs of the run arrays are run (see
+ * {@link Settings#getNrofDifferentRuns()}) using as many processes as there
+ * are available processors. The runs option has the same format as the
+ * batch mode option of {@link DTNSim}. The child JVMs use the same class
+ * path and JVM options as the sweep runner and their output is written to
+ * log files next to the manifest.
+ * </P>
+ */
+public class SweepRunner {
+	/** Number of processes -option ({@value}). Default is the number of
+	 * available processors. */
+	public static final String PROCESSES_FLAG = "-p";
+	/** Manifest file -option ({@value}). Default is
+	 * {@value #DEF_MANIFEST}. */
+	public static final String MANIFEST_FLAG = "-m";
+	/** Runs -option ({@value}). See {@link DTNSim#main(String[])} */
+	public static final String RUNS_FLAG = DTNSim.BATCH_MODE_FLAG;
+	/** Default manifest file name ({@value}) */
+	public static final String DEF_MANIFEST = "sweep_manifest.txt";
+
+	/** Manifest status of a run that finished normally ({@value}) */
+	public static final String STATUS_DONE = "done";
+	/** Manifest status of a run that failed ({@value}) */
+	public static final String STATUS_FAILED = "failed";
+	/** Delimiter of the fields in manifest lines (tab) */
+	private static final String DELIM = "\t";
+	/** Manifest's first line (followed by the configuration files) */
+	private static final String HEADER = "# ONE sweep of:";
+
+	private String[] confFiles;
+	private File manifest;
+	private PrintWriter manifestOut;
+	/** the simulator processes that are running */
+	private Set<Process> processes;
+	private int nrofFailed;
+
+	/**
+	 * Creates a new sweep runner
+	 * @param confFiles The configuration files of the sweep
+	 * @param manifest The manifest file
+	 */
+	public SweepRunner(String[] confFiles, File manifest) {
+		this.confFiles = confFiles;
+		this.manifest = manifest;
+		this.processes = Collections.synchronizedSet(new HashSet<Process>());
+		this.nrofFailed = 0;
+	}
+
+	/**
+	 * Starts the sweep runner with the given arguments.
+	 * @param args Command line arguments
+	 */
+	public static void main(String[] args) {
+		int nrofProcesses = Runtime.getRuntime().availableProcessors();
+		String manifestFile = DEF_MANIFEST;
+		int[] runs = null;
+		int i;
+
+		/* set US locale to parse decimals in consistent way */
+		java.util.Locale.setDefault(java.util.Locale.US);
+
+		for (i=0; i < args.length - 1 && args[i].startsWith("-"); i+=2) {
+			if (args[i].equals(PROCESSES_FLAG)) {
+				nrofProcesses = parsePositiveInt(args[i+1]);
+			}
+			else if (args[i].equals(MANIFEST_FLAG)) {
+				manifestFile = args[i+1];
+			}
+			else if (args[i].equals(RUNS_FLAG)) {
+				runs = DTNSim.parseNrofRuns(args[i+1]);
+			}
+			else {
+				exit("Unknown option " + args[i]);
+			}
+		}
+
+		if (i >= args.length) {
+			exit("Usage: SweepRunner [" + PROCESSES_FLAG + " processes] [" +
+					MANIFEST_FLAG + " manifest] [" + RUNS_FLAG + " runs] " +
+					"conf-files");
+		}
+
+		String[] confFiles = new String[args.length - i];
+		System.arraycopy(args, i, confFiles, 0, confFiles.length);
+
+		try {
+			Settings.init(confFiles[0]);
+			for (i=1; i<confFiles.length; i++) {
+				Settings.addSettings(confFiles[i]);
+			}
+			if (runs == null) {
+				runs = new int[] {0, Settings.getNrofDifferentRuns()};
+			}
+		} catch (SettingsError er) {
+			exit("Failed to load settings: " + er.getMessage());
+		}
+
+		SweepRunner sr = new SweepRunner(confFiles, new File(manifestFile));
+		boolean ok = false;
+		try {
+			ok = sr.run(runs[0], runs[1], nrofProcesses);
+		} catch (IOException e) {
+			exit("Can't use manifest " + manifestFile + ": " + e.getMessage());
+		}
+		System.exit(ok ? 0 : 1);
+	}
+
+	/**
+	 * Runs the runs that are not already done according to the manifest
+	 * @param first Index of the first run
+	 * @param last Index of the last run + 1
+	 * @param nrofProcesses Maximum number of runs to run at the same time
+	 * @return True if all the runs were run successfully
+	 * @throws IOException If the manifest can't be read or written
+	 */
+	public boolean run(int first, int last, int nrofProcesses)
+			throws IOException {
+		Set<Integer> done = readManifest();
+		List<Integer> todo = new ArrayList<Integer>();
+		long startTime = System.currentTimeMillis();
+
+		for (int i=first; i<last; i++) {
+			if (!done.contains(i)) {
+				todo.add(i);
+			}
+		}
+		print((last - first - todo.size()) + "/" + (last - first) +
+				" runs already done according to " + manifest);
+		if (todo.size() == 0) {
+			return true;
+		}
+
+		boolean newManifest = !manifest.exists();
+		this.manifestOut = new PrintWriter(new FileWriter(manifest, true));
+		if (newManifest) {
+			manifestOut.println(HEADER + getConfString());
+			manifestOut.flush();
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() { // don't leave orphan simulators running
+				synchronized (processes) {
+					for (Process p : processes) {
+						p.destroy();
+					}
+				}
+			}
+		});
+
+		ExecutorService pool = Executors.newFixedThreadPool(nrofProcesses);
+		for (final int runIndex : todo) {
+			final List<String> reports = getReportFileNames(runIndex);
+			pool.execute(new Runnable() {
+				public void run() {
+					runSimulation(runIndex, reports);
+				}
+			});
+		}
+
+		pool.shutdown();
+		try {
+			while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+				// wait until all runs are done
+			}
+		} catch (InterruptedException e) {
+			throw new SimError("Sweep was interrupted", e);
+		}
+		manifestOut.close();
+
+		double duration = (System.currentTimeMillis() - startTime)/1000.0;
+		print("---\nSweep done in " + String.format("%.2f", duration) +
+				"s (" + nrofFailed + " failed runs)");
+		return nrofFailed == 0;
+	}
+
+	/**
+	 * Runs a simulation run in a child process and records the result to
+	 * the manifest
+	 * @param runIndex Index of the run
+	 * @param reports Names of the run's report files (see
+	 * {@link Report#getOutputFileName(String)})
+	 */
+	private void runSimulation(int runIndex, List<String> reports) {
+		int runNumber = runIndex + 1;
+		File log = getLogFile(runNumber);
+		long startTime = System.currentTimeMillis();
+		int exitValue = -1;
+
+		print("Starting run " + runNumber + " (output: " + log + ")");
+		try {
+			ProcessBuilder pb = new ProcessBuilder(getCommand(runNumber));
+			pb.redirectErrorStream(true);
+			Process p = pb.start();
+			processes.add(p);
+			OutputStream out = new FileOutputStream(log);
+			try {
+				copy(p.getInputStream(), out);
+				exitValue = p.waitFor();
+			} finally {
+				out.close();
+				processes.remove(p);
+			}
+		} catch (IOException e) {
+			System.err.println("Run " + runNumber + " failed: " + e);
+		} catch (InterruptedException e) {
+			System.err.println("Run " + runNumber + " was interrupted");
+		}
+
+		double duration = (System.currentTimeMillis() - startTime)/1000.0;
+		StringBuilder line = new StringBuilder();
+		line.append(runNumber).append(DELIM);
+		if (exitValue == 0) {
+			line.append(STATUS_DONE);
+		}
+		else {
+			line.append(STATUS_FAILED);
+		}
+		line.append(DELIM).append(String.format("%.2f", duration));
+		if (exitValue == 0) {
+			for (String file : findReportFiles(reports)) {
+				line.append(DELIM).append(file);
+			}
+		}
+
+		synchronized (this) {
+			if (exitValue != 0) {
+				nrofFailed++;
+			}
+			manifestOut.println(line);
+			manifestOut.flush();
+		}
+		print("Run " + runNumber + (exitValue == 0 ? " done" : " FAILED") +
+				" in " + String.format("%.2f", duration) + "s");
+	}
+
+	/**
+	 * Reads the manifest (if it exists) and returns the indexes of the runs
+	 * that are done and whose report files still exist
+	 * @return Indexes of the runs that are done
+	 * @throws IOException If the manifest can't be read or it belongs to
+	 * another sweep
+	 */
+	private Set<Integer> readManifest() throws IOException {
+		Set<Integer> done = new HashSet<Integer>();
+		if (!manifest.exists()) {
+			return done;
+		}
+
+		BufferedReader reader = new BufferedReader(new FileReader(manifest));
+		try {
+			String line = reader.readLine();
+			if (line == null || !line.equals(HEADER + getConfString())) {
+				throw new IOException("manifest is of another sweep: " +
+						line);
+			}
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(DELIM);
+				if (fields.length < 3 || !fields[1].equals(STATUS_DONE)) {
+					continue; // failed run (or a partially written line)
+				}
+				boolean reportsExist = true;
+				for (int i=3; i<fields.length; i++) {
+					if (!new File(fields[i]).exists()) {
+						reportsExist = false;
+					}
+				}
+				if (reportsExist) {
+					done.add(Integer.parseInt(fields[0]) - 1);
+				}
+				else { // report was removed -> run again
+					done.remove(Integer.parseInt(fields[0]) - 1);
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("invalid run number: " + e.getMessage());
+		} finally {
+			reader.close();
+		}
+
+		return done;
+	}
+
+	/**
+	 * Returns the report file names of a run
+	 * @param runIndex Index of the run
+	 * @return The report file names (or prefixes of them for intervalled
+	 * reports)
+	 */
+	private List<String> getReportFileNames(int runIndex) {
+		List<String> names = new ArrayList<String>();
+		Settings.setRunIndex(runIndex);
+		Settings s = new Settings();
+
+		for (int i=1, n = s.getInt(DTNSimUI.NROF_REPORT_S); i<=n; i++) {
+			names.add(Report.getOutputFileName(
+					s.getSetting(DTNSimUI.REPORT_S + i)));
+		}
+
+		return names;
+	}
+
+	/**
+	 * Returns the files that the reports of a run created
+	 * @param reports The report file names (or prefixes of them)
+	 * @return Paths of the existing report files
+	 */
+	private List<String> findReportFiles(List<String> reports) {
+		List<String> files = new ArrayList<String>();
+
+		for (String name : reports) {
+			File file = new File(name);
+			if (file.exists()) {
+				files.add(file.getPath());
+				continue;
+			}
+			/* intervalled report -> file name is prefix of the files */
+			File dir = file.getAbsoluteFile().getParentFile();
+			String[] list = (dir == null ? null : dir.list());
+			if (list == null) {
+				continue;
+			}
+			for (String f : list) {
+				if (f.startsWith(file.getName()) &&
+						f.endsWith(Report.OUT_SUFFIX)) {
+					files.add(new File(file.getParentFile(), f).getPath());
+				}
+			}
+		}
+
+		return files;
+	}
+
+	/**
+	 * Returns the command line for a child JVM that runs one run
+	 * @param runNumber Number of the run (run index + 1)
+	 * @return The command and its arguments
+	 */
+	private List<String> getCommand(int runNumber) {
+		List<String> cmd = new ArrayList<String>();
+		cmd.add(System.getProperty("java.home") + File.separator + "bin" +
+				File.separator + "java");
+		cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.add(DTNSim.class.getName());
+		cmd.add(DTNSim.BATCH_MODE_FLAG);
+		cmd.add(runNumber + DTNSim.RANGE_DELIMETER + runNumber);
+		for (String f : confFiles) {
+			cmd.add(f);
+		}
+		return cmd;
+	}
+
+	/**
+	 * Returns the log file of a run
+	 * @param runNumber Number of the run (run index + 1)
+	 * @return The log file
+	 */
+	private File getLogFile(int runNumber) {
+		String name = manifest.getName();
+		if (name.endsWith(Report.OUT_SUFFIX)) {
+			name = name.substring(0, name.length() -
+					Report.OUT_SUFFIX.length());
+		}
+		return new File(manifest.getAbsoluteFile().getParentFile(),
+				name + "_run" + runNumber + ".log");
+	}
+
+	/**
+	 * Returns the configuration file names in a string
+	 * @return The configuration file names delimited with spaces
+	 */
+	private String getConfString() {
+		StringBuilder sb = new StringBuilder();
+		for (String f : confFiles) {
+			sb.append(" ").append(f);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Copies all data from an input stream to an output stream
+	 * @param in The input stream
+	 * @param out The output stream
+	 * @throws IOException If reading or writing fails
+	 */
+	private static void copy(InputStream in, OutputStream out)
+			throws IOException {
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+	}
+
+	/**
+	 * Parses a positive integer or exits with an error message
+	 * @param value The value to parse
+	 * @return The parsed value
+	 */
+	private static int parsePositiveInt(String value) {
+		try {
+			int i = Integer.parseInt(value);
+			if (i > 0) {
+				return i;
+			}
+		} catch (NumberFormatException e) {
+			// handled below
+		}
+		exit("Invalid value '" + value + "'; must be a positive integer");
+		return -1;
+	}
+
+	/**
+	 * Prints an error message and exits
+	 * @param txt The message
+	 */
+	private static void exit(String txt) {
+		System.err.println(txt);
+		System.exit(-1);
+	}
+
+	/**
+	 * Prints text to stdout
+	 * @param txt Text to print
+	 */
+	private static void print(String txt) {
+		System.out.println(txt);
+	}
+}
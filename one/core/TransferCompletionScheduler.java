@@ -0,0 +1,22 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+/**
+ * Interface for classes that finalize message transfers at their exact
+ * completion time. Connections whose transfer time is known when the
+ * transfer starts schedule the completion here (see
+ * {@link CBRConnection}).
+ */
+public interface TransferCompletionScheduler {
+
+	/**
+	 * Schedules the completion of a message transfer
+	 * @param con The connection that transfers the message
+	 * @param time The simulation time when the transfer is done
+	 */
+	public void scheduleTransferCompletion(Connection con, double time);
+
+}
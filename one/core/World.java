@@ -4,6 +4,7 @@
  */
 package core;
 
+import input.DTN2Events;
 import input.EventQueue;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
@@ -12,13 +13,14 @@ import interfaces.ConnectivityGrid;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Random;
 
 /**
  * World contains all the nodes and is responsible for updating their
  * location and connections.
  */
-public class World {
+public class World implements TransferCompletionScheduler {
 	/** namespace of optimization settings ({@value})*/
 	public static final String SETTINGS_NS = "Optimization";
 	/**
@@ -37,11 +39,62 @@ public class World {
 	 * Default is @link {@link #DEF_RANDOMIZE_UPDATES}.
 	 */
 	public static final String RANDOMIZE_UPDATES_S = "randomizeUpdateOrder";
+	/**
+	 * Number of threads to use for moving the hosts and looking up their
+	 * contacts -setting id ({@value}). Values 0 and 1 mean that everything
+	 * is done in the simulation thread. The results are the same regardless
+	 * of the number of threads. Default is {@link #DEF_PARALLEL_UPDATES}.
+	 * @see ParallelUpdater
+	 */
+	public static final String PARALLEL_UPDATES_S = "parallelUpdates";
+	/**
+	 * Should the times when hosts come within range of each other be
+	 * predicted -setting id ({@value}). Boolean (true/false) variable.
+	 * If true, the hosts are updated also at the predicted times and at the
+	 * times of all other events, the hosts are moved to their location
+	 * at that time. This way connections are made (mostly) at their exact
+	 * time even with long update intervals.
+	 * Default is {@link #DEF_CONTACT_PREDICTION}.
+	 * @see ContactPredictor
+	 */
+	public static final String CONTACT_PREDICTION_S = "contactPrediction";
+	/**
+	 * Should the connectivity grids keep only the occupied cells
+	 * -setting id ({@value}). Boolean (true/false) variable. A sparse grid
+	 * uses memory only for the cells that have interfaces in them, which
+	 * saves memory and startup time in large worlds. The results are the
+	 * same with both grids. If the setting is not given, sparse grids are
+	 * used for grids that would have more than {@link #MAX_DENSE_GRID_CELLS}
+	 * cells.
+	 * @see interfaces.SparseConnectivityGrid
+	 */
+	public static final String SPARSE_GRID_S = "sparseGrid";
+	/**
+	 * Should the updates of idle routers be skipped -setting id ({@value}).
+	 * Boolean (true/false) variable. A router is idle when it has nothing
+	 * to do until its host gets a connection change or a message (see
+	 * {@link routing.MessageRouter#isIdle()}); the network interfaces of
+	 * all hosts are still updated. The results are the same whether the
+	 * updates are skipped or not as long as every router that does
+	 * time-driven work in its update reports itself busy. Default is
+	 * {@link #DEF_SKIP_IDLE_ROUTERS}.
+	 */
+	public static final String SKIP_IDLE_ROUTERS_S = "skipIdleRouters";
+	/** the largest number of cells in a full (not sparse) connectivity
+	 * grid if the sparse grid setting is not given ({@value}) */
+	public static final long MAX_DENSE_GRID_CELLS = 1000000;
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 	/** should the update order of nodes be randomized -setting's default value
 	 * ({@value}) */
 	public static final boolean DEF_RANDOMIZE_UPDATES = true;
+	/** default number of update threads ({@value}) */
+	public static final int DEF_PARALLEL_UPDATES = 0;
+	/** should contacts be predicted -setting's default value ({@value}) */
+	public static final boolean DEF_CONTACT_PREDICTION = false;
+	/** should idle routers' updates be skipped -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_SKIP_IDLE_ROUTERS = false;
 
 	private int sizeX;
 	private int sizeY;
@@ -49,9 +102,18 @@ public class World {
 	private double updateInterval;
 	private SimClock simClock;
 	private double nextQueueEventTime;
-	private EventQueue nextEventQueue;
+	/** the event queue that has the next event */
+	private QueueEntry nextEventQueue;
+	/** event queues whose next event's time changes only when their next
+	 * event is taken, ordered by the time of their next event */
+	private PriorityQueue<QueueEntry> orderedQueues;
+	/** event queues whose next event's time is checked every time (the
+	 * scheduled updates and queues that get events asynchronously) */
+	private List<QueueEntry> polledQueues;
 	/** list of nodes; nodes are indexed by their network address */
 	private List<DTNHost> hosts;
+	/** locations of the nodes; indexed by their network address */
+	private HostPositions hostPositions;
 	private boolean simulateConnections;
 	/** nodes in the order they should be updated (if the order should be 
 	 * randomized; null value means that the order should not be randomized) */
@@ -61,6 +123,18 @@ public class World {
 	private List<UpdateListener> updateListeners;
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
+	/** Runs the parallel parts of updates (null if updates are serial) */
+	private ParallelUpdater parallelUpdater;
+	/** Predicts the contacts (null if contacts are not predicted) */
+	private ContactPredictor contactPredictor;
+	/** should the updates of idle routers be skipped */
+	private boolean skipIdleRouters;
+	/** scheduled completions of message transfers (ordered by time) */
+	private PriorityQueue<TransferCompletion> transferCompletions;
+	/** sequence number of the next scheduled transfer completion */
+	private long nextTransferSeq;
+	/** expiry timers of the messages in the hosts' buffers */
+	private ExpiryWheel expiryWheel;
 
 	/** single ConnectivityCell's size is biggest radio range times this */
 	private int conCellSizeMult;
@@ -72,6 +146,7 @@ public class World {
 			double updateInterval, List<UpdateListener> updateListeners,
 			boolean simulateConnections, List<EventQueue> eventQueues) {
 		this.hosts = hosts;
+		this.hostPositions = SimContext.getCurrent().hostPositions;
 		this.sizeX = sizeX;
 		this.sizeY = sizeY;
 		this.updateInterval = updateInterval;
@@ -81,8 +156,15 @@ public class World {
 		
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
+		this.transferCompletions = new PriorityQueue<TransferCompletion>();
+		this.nextTransferSeq = 0;
+		this.expiryWheel = new ExpiryWheel();
 		this.isCancelled = false;		
+		for (DTNHost host : hosts) {
+			host.setWorld(this);
+		}
 
+		initEventQueues();
 		setNextEventQueue();
 		initSettings();
 	}
@@ -117,6 +199,37 @@ public class World {
 			throw new SettingsError("Too small value (" + conCellSizeMult +
 					") for " + SETTINGS_NS + "." + CELL_SIZE_MULT_S);
 		}
+
+		int nrofThreads = DEF_PARALLEL_UPDATES;
+		if (s.contains(PARALLEL_UPDATES_S)) {
+			nrofThreads = s.getInt(PARALLEL_UPDATES_S);
+		}
+		if (nrofThreads < 0) {
+			throw new SettingsError("Negative value (" + nrofThreads +
+					") for " + SETTINGS_NS + "." + PARALLEL_UPDATES_S);
+		}
+		if (nrofThreads > 1) {
+			this.parallelUpdater = new ParallelUpdater(nrofThreads);
+		}
+		else {
+			this.parallelUpdater = null;
+		}
+
+		boolean predictContacts = DEF_CONTACT_PREDICTION;
+		if (s.contains(CONTACT_PREDICTION_S)) {
+			predictContacts = s.getBoolean(CONTACT_PREDICTION_S);
+		}
+		if (predictContacts && simulateConnections) {
+			this.contactPredictor = new ContactPredictor();
+		}
+		else {
+			this.contactPredictor = null;
+		}
+
+		this.skipIdleRouters = DEF_SKIP_IDLE_ROUTERS;
+		if (s.contains(SKIP_IDLE_ROUTERS_S)) {
+			this.skipIdleRouters = s.getBoolean(SKIP_IDLE_ROUTERS_S);
+		}
 	}
 
 	/**
@@ -141,46 +254,118 @@ public class World {
 		simClock.setTime(0);	
 	}
 
+	/**
+	 * Puts the event queues to the ordered queues' heap, or to the list of
+	 * polled queues if the queue's next event's time can change without
+	 * taking events from it.
+	 */
+	private void initEventQueues() {
+		this.orderedQueues = new PriorityQueue<QueueEntry>();
+		this.polledQueues = new ArrayList<QueueEntry>();
+
+		/* scheduled updates go first if there are events at the same time */
+		this.polledQueues.add(new QueueEntry(scheduledUpdates, -1));
+
+		for (int i=0, n=eventQueues.size(); i<n; i++) {
+			EventQueue eq = eventQueues.get(i);
+			QueueEntry entry = new QueueEntry(eq, i);
+			if (eq instanceof DTN2Events) { // gets events from other threads
+				this.polledQueues.add(entry);
+			}
+			else {
+				entry.updateTime();
+				this.orderedQueues.add(entry);
+			}
+		}
+	}
+
 	/**
 	 * Goes through all event Queues and sets the 
-	 * event queue that has the next event.
+	 * event queue that has the next event. If many queues have events at
+	 * the same time, the scheduled updates queue is the first and the
+	 * other queues are in their configuration order.
 	 */
 	public void setNextEventQueue() {
-		EventQueue nextQueue = scheduledUpdates;
-		double earliest = nextQueue.nextEventsTime();
+		QueueEntry next = this.orderedQueues.peek();
 
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;	
-				earliest = eq.nextEventsTime();
+		for (QueueEntry entry : this.polledQueues) {
+			entry.updateTime();
+			if (next == null || entry.compareTo(next) < 0) {
+				next = entry;
 			}
 		}
 
-		this.nextEventQueue = nextQueue;
-		this.nextQueueEventTime = earliest;
+		this.nextEventQueue = next;
+		this.nextQueueEventTime = next.time;
+	}
+
+	/**
+	 * Takes the next event from the event queue that has the next event
+	 * (see {@link #setNextEventQueue()}).
+	 * @return The next event
+	 */
+	private ExternalEvent takeNextEvent() {
+		QueueEntry entry = this.nextEventQueue;
+		ExternalEvent ee = entry.queue.nextEvent();
+
+		if (this.orderedQueues.peek() == entry) {
+			/* queue's next event changed -> move the queue to its place */
+			this.orderedQueues.poll();
+			entry.updateTime();
+			this.orderedQueues.add(entry);
+		}
+
+		return ee;
 	}
 
 	/** 
 	 * Update (move, connect, disconnect etc.) all hosts in the world.
-	 * Runs all external events that are due between the time when
-	 * this method is called and after one update interval.
+	 * Runs all external events and completes all scheduled transfers (see
+	 * {@link #scheduleTransferCompletion(Connection, double)}) that are due
+	 * between the time when this method is called and after one update
+	 * interval.
 	 */
 	public void update () {
 		double runUntil = SimClock.getTime() + this.updateInterval;
 
+		if (this.contactPredictor != null) {
+			this.contactPredictor.scheduleContacts(this, this.hosts,
+					this.updateInterval);
+		}
 		setNextEventQueue();
 
-		/* process all events that are due until next interval update */
-		while (this.nextQueueEventTime <= runUntil) {
-			simClock.setTime(this.nextQueueEventTime);
-			ExternalEvent ee = this.nextEventQueue.nextEvent();
-			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
+		/* process all events and transfer completions that are due until
+		   next interval update */
+		while (true) {
+			double transferTime = (this.transferCompletions.isEmpty() ?
+					Double.MAX_VALUE : this.transferCompletions.peek().time);
+			double eventTime = Math.min(this.nextQueueEventTime, transferTime);
+			if (eventTime > runUntil) {
+				break;
+			}
+			if (this.contactPredictor != null) {
+				moveHostsUntil(eventTime);
+			}
+			simClock.setTime(eventTime);
+			if (transferTime == eventTime) {
+				completeTransfers(eventTime);
+				continue;
+			}
+			do {
+				ExternalEvent ee = takeNextEvent();
+				ee.processEvent(this);
+				setNextEventQueue();
+			} while (this.nextQueueEventTime == eventTime);
+			updateHosts(); // update all hosts after the events of this time
 			setNextEventQueue();
 		}
 
-		moveHosts(this.updateInterval);
+		if (this.contactPredictor != null) {
+			moveHostsUntil(runUntil);
+		}
+		else {
+			moveHosts(this.updateInterval);
+		}
 		simClock.setTime(runUntil);
 
 		updateHosts();
@@ -190,19 +375,49 @@ public class World {
 			ul.updated(this.hosts);
 		}
 	}
+
+	/**
+	 * Completes the scheduled transfers that are due by the given time.
+	 * The sender's router finalizes the transfer and both the sender's and
+	 * the receiver's router can start new transfers right away; the
+	 * routers are not updated otherwise. Transfers that have been aborted
+	 * or finalized already are skipped.
+	 * @param time The current simulation time
+	 */
+	private void completeTransfers(double time) {
+		while (!this.transferCompletions.isEmpty() &&
+				this.transferCompletions.peek().time <= time) {
+			TransferCompletion tc = this.transferCompletions.poll();
+			Connection con = tc.con;
+			if (con.msgOnFly != tc.message) {
+				continue;
+			}
+			DTNHost from = con.msgFromNode;
+			from.completeTransfer(con);
+			con.getOtherNode(from).tryNextTransfer();
+		}
+	}
 
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
 	 * order randomizing is on (updateOrder array is defined), the calls
-	 * are made in random order.
+	 * are made in random order. The expired messages are dropped before
+	 * the hosts are updated.
 	 */
 	private void updateHosts() {
+		dropExpiredMessages();
+
+		if (this.parallelUpdater != null && simulateConnections) {
+			this.parallelUpdater.findContacts(hosts);
+		}
+
 		if (this.updateOrder == null) { // randomizing is off
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
 				}
-				hosts.get(i).update(simulateConnections);
+				hosts.get(i).update(simulateConnections,
+						this.skipIdleRouters);
 			}
 		}
 		else { // update order randomizing is on
@@ -214,7 +429,8 @@ public class World {
 				if (this.isCancelled) {
 					break;
 				}
-				this.updateOrder.get(i).update(simulateConnections);
+				this.updateOrder.get(i).update(simulateConnections,
+						this.skipIdleRouters);
 			}			
 		}
 	}
@@ -224,12 +440,29 @@ public class World {
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.parallelUpdater != null) {
+			this.parallelUpdater.moveHosts(hosts, timeIncrement);
+			return;
+		}
+
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);			
 		}		
 	}
 
+	/**
+	 * Moves all hosts from the current simulation time to the given time
+	 * (if it is later than the current time)
+	 * @param time The time until the hosts should move
+	 */
+	private void moveHostsUntil(double time) {
+		double timeIncrement = time - SimClock.getTime();
+		if (timeIncrement > 0) {
+			moveHosts(timeIncrement);
+		}
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
@@ -245,6 +478,14 @@ public class World {
 		return this.hosts;
 	}
 
+	/**
+	 * Returns the locations of the hosts
+	 * @return the location table that is indexed by the host addresses
+	 */
+	public HostPositions getHostPositions() {
+		return this.hostPositions;
+	}
+
 	/**
 	 * Returns the x-size (width) of the world 
 	 * @return the x-size (width) of the world 
@@ -287,4 +528,97 @@ public class World {
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
 	}
+
+	/**
+	 * Schedules the completion of a message transfer. At the completion
+	 * time, the routers of the two hosts of the connection are updated,
+	 * so the transfer is finalized at its exact time instead of at the
+	 * next update interval and without updating the other hosts.
+	 * @param con The connection that transfers the message
+	 * @param time The simulation time when the transfer is done
+	 */
+	public void scheduleTransferCompletion(Connection con, double time) {
+		this.transferCompletions.add(new TransferCompletion(con, time,
+				this.nextTransferSeq++));
+	}
+
+	/**
+	 * Returns the timing wheel where the routers schedule the expiry of
+	 * the messages in their buffers
+	 * @return The wheel
+	 */
+	public ExpiryWheel getExpiryWheel() {
+		return this.expiryWheel;
+	}
+
+	/**
+	 * Informs the listeners of the messages whose TTL has ended by now
+	 * (see {@link ExpiryWheel})
+	 */
+	private void dropExpiredMessages() {
+		for (ExpiryWheel.Timer t :
+				this.expiryWheel.advance(SimClock.getTime())) {
+			t.getListener().messageExpired(t.getMessage());
+		}
+	}
+
+	/**
+	 * A scheduled completion of a message transfer. Completions are
+	 * ordered by the time and then by the order they were scheduled in.
+	 */
+	private static class TransferCompletion
+			implements Comparable<TransferCompletion> {
+		private Connection con;
+		/** the message that was being transferred when scheduled */
+		private Message message;
+		private double time;
+		private long seq;
+
+		public TransferCompletion(Connection con, double time, long seq) {
+			this.con = con;
+			this.message = con.msgOnFly;
+			this.time = time;
+			this.seq = seq;
+		}
+
+		public int compareTo(TransferCompletion other) {
+			if (this.time != other.time) {
+				return this.time < other.time ? -1 : 1;
+			}
+			return this.seq < other.seq ? -1 : (this.seq > other.seq ? 1 : 0);
+		}
+	}
+
+	/**
+	 * An event queue with the time of its next event. Entries are ordered
+	 * by the time and then by the queue's index.
+	 */
+	private static class QueueEntry implements Comparable<QueueEntry> {
+		private EventQueue queue;
+		/** index of the queue in the event queues list (-1 for the scheduled
+		 * updates queue) */
+		private int index;
+		/** time of the queue's next event */
+		private double time;
+
+		public QueueEntry(EventQueue queue, int index) {
+			this.queue = queue;
+			this.index = index;
+			this.time = Double.MAX_VALUE;
+		}
+
+		/**
+		 * Reads the time of the queue's next event
+		 */
+		public void updateTime() {
+			this.time = this.queue.nextEventsTime();
+		}
+
+		public int compareTo(QueueEntry other) {
+			if (this.time != other.time) {
+				return this.time < other.time ? -1 : 1;
+			}
+			return this.index - other.index;
+		}
+	}
 }
@@ -4,25 +4,29 @@
  */
 package input;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Event queue where simulation objects can request an update to happen
  * at the specified simulation time. Multiple updates at the same time 
- * are merged to a single update.
+ * are merged to a single update. The updates are kept in a binary heap so
+ * adding an update and taking the next one take logarithmic time.
  */
 public class ScheduledUpdatesQueue implements EventQueue {
-	/** Time of the event (simulated seconds) */
-	private ExternalEvent nextEvent;
-	private List<ExternalEvent> updates;
+	/** the scheduled updates ordered by their time */
+	private PriorityQueue<ExternalEvent> updates;
+	/** times of the scheduled updates (for merging updates of same time) */
+	private Set<Double> updateTimes;
 	
 	/**
 	 * Constructor. Creates an empty update queue.
 	 */
 	public ScheduledUpdatesQueue(){
-		this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		this.updates = new ArrayList<ExternalEvent>();
+		this.updates = new PriorityQueue<ExternalEvent>();
+		this.updateTimes = new HashSet<Double>();
 	}
 	
 	/**
@@ -31,15 +35,12 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event
 	 */
 	public ExternalEvent nextEvent() {
-		ExternalEvent event = this.nextEvent;
-		
-		if (this.updates.size() == 0) {
-			this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		}
-		else {
-			this.nextEvent = this.updates.remove(0);
+		if (this.updates.isEmpty()) {
+			return new ExternalEvent(Double.MAX_VALUE);
 		}
 		
+		ExternalEvent event = this.updates.poll();
+		this.updateTimes.remove(event.getTime());
 		return event;
 	}
 	
@@ -49,7 +50,10 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event's time
 	 */
 	public double nextEventsTime() {
-		return this.nextEvent.getTime();
+		if (this.updates.isEmpty()) {
+			return Double.MAX_VALUE;
+		}
+		return this.updates.peek().getTime();
 	}
 
 	/**
@@ -57,47 +61,17 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @param simTime The time when the update should happen
 	 */
 	public void addUpdate(double simTime) {
-		ExternalEvent ee = new ExternalEvent(simTime);
-
-		if (ee.compareTo(nextEvent) == 0) { // this event is already next
-			return;
+		if (!this.updateTimes.add(simTime)) {
+			return; // update with the given time exists -> no need for new
 		}
-		else if (this.nextEvent.getTime() > simTime) { // new nextEvent
-			putToQueue(this.nextEvent); // put the old nextEvent back to q
-			this.nextEvent = ee;
-		}
-		else { // given event happens later..
-			putToQueue(ee);
-		}
-	}
-	
-	/**
-	 * Puts a event to the queue in the right place
-	 * @param ee The event to put to the queue
-	 */
-	private void putToQueue(ExternalEvent ee) {
-		double eeTime = ee.getTime();
-		
-		for (int i=0, n=this.updates.size(); i<n; i++) {
-			double time = updates.get(i).getTime();
-			if (time == eeTime) {
-				return; // update with the given time exists -> no need for new
-			}
-			else if (eeTime < time) {
-				this.updates.add(i, ee);
-				return;
-			}
-		}
-		
-		/* all existing updates are earlier -> add to the end of the list */
-		this.updates.add(ee);  
+		this.updates.add(new ExternalEvent(simTime));
 	}
 	
 	public String toString() {
-		String times = "updates @ " + this.nextEvent.getTime();
+		String times = "updates @";
 		
-		for (ExternalEvent ee : this.updates) {
-			times += ", " + ee.getTime();
+		for (Double time : new TreeSet<Double>(this.updateTimes)) {
+			times += " " + time;
 		}
 		
 		return times;
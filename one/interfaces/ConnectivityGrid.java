@@ -11,9 +11,12 @@ import java.util.HashMap;
 import movement.MovementModel;
 
 import core.Coord;
+import core.DTNHost;
 import core.DTNSim;
+import core.HostPositions;
 import core.NetworkInterface;
 import core.Settings;
+import core.SimContext;
 
 /**
  * <P>
@@ -43,23 +46,34 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	private int cellSize;
 	private int rows;
 	private int cols;
-	private static int worldSizeX;
-	private static int worldSizeY;
-
-	static HashMap<Integer,ConnectivityGrid> gridobjects;
 
 	static {
 		DTNSim.registerForReset(ConnectivityGrid.class.getCanonicalName());
 		reset();
 	}
 	
+	/**
+	 * Removes the grid objects of the current simulation context
+	 */
 	public static void reset() {
-		gridobjects = new HashMap<Integer,ConnectivityGrid>();
-
-		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
-		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
-		worldSizeX = worldSize[0];
-		worldSizeY = worldSize[1];
+		SimContext.getCurrent().setState(ConnectivityGrid.class, null);
+	}
+	
+	/**
+	 * Returns the grid objects of the current simulation context
+	 * @return The grid objects mapped by their keys
+	 */
+	@SuppressWarnings("unchecked")
+	private static HashMap<Integer,ConnectivityGrid> getGridObjects() {
+		SimContext context = SimContext.getCurrent();
+		HashMap<Integer,ConnectivityGrid> gridobjects = 
+			(HashMap<Integer,ConnectivityGrid>)context.getState(
+					ConnectivityGrid.class);
+		if (gridobjects == null) {
+			gridobjects = new HashMap<Integer,ConnectivityGrid>();
+			context.setState(ConnectivityGrid.class, gridobjects);
+		}
+		return gridobjects;
 	}
 
 	/**
@@ -69,15 +83,17 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * 	radio coverage's diameter)
 	 */
 	private ConnectivityGrid(int cellSize) {
-		this.rows = worldSizeY/cellSize + 1;
-		this.cols = worldSizeX/cellSize + 1;
+		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+		this.rows = worldSize[1]/cellSize + 1;
+		this.cols = worldSize[0]/cellSize + 1;
 		// leave empty cells on both sides to make neighbor search easier 
 		this.cells = new GridCell[rows+2][cols+2];
 		this.cellSize = cellSize;
 
 		for (int i=0; i<rows+2; i++) {
 			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
+				this.cells[i][j] = new GridCell(i, j);
 			}
 		}
 		ginterfaces = new HashMap<NetworkInterface,GridCell>();
@@ -92,6 +108,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public static ConnectivityGrid ConnectivityGridFactory(int key, 
 			double cellSize) {
+		HashMap<Integer,ConnectivityGrid> gridobjects = getGridObjects();
 		if (gridobjects.containsKey((Integer)key)) {
 			return (ConnectivityGrid)gridobjects.get((Integer)key);
 		} else {
@@ -140,7 +157,11 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public void updateLocation(NetworkInterface ni) {
 		GridCell oldCell = (GridCell)ginterfaces.get(ni);
-		GridCell newCell = cellFromCoord(ni.getLocation());
+		DTNHost host = ni.getHost();
+		HostPositions positions = host.getPositions();
+		int address = host.getAddress();
+		GridCell newCell = cellFromLocation(positions.getX(address),
+				positions.getY(address));
 
 		if (newCell != oldCell) {
 			oldCell.moveInterface(ni, newCell);
@@ -149,44 +170,43 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells 
+	 * Returns how many cells away from its own cell an interface's range
+	 * can reach. This is one unless the interface's range has grown larger
+	 * than the cell size (e.g., using the {@link NetworkInterface#RANGE_ID}
+	 * setting).
+	 * @param ni The interface
+	 * @return Number of cells to check on each side of the interface's cell
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
+	private int getReach(NetworkInterface ni) {
+		double range = ni.getTransmitRange();
+		if (range <= cellSize) {
+			return 1;
+		}
+		return (int)Math.ceil(range / cellSize);
 	}
 
 	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
+	 * Get the cell having the specific coordinates
+	 * @param c Coordinates
+	 * @return The cell
 	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
+	private GridCell cellFromCoord(Coord c) {
+		return cellFromLocation(c.getX(), c.getY());
 	}
 
 	/**
 	 * Get the cell having the specific coordinates
-	 * @param c Coordinates
+	 * @param x The x coordinate
+	 * @param y The y coordinate
 	 * @return The cell
 	 */
-	private GridCell cellFromCoord(Coord c) {
+	private GridCell cellFromLocation(double x, double y) {
 		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1; 
-		int col = (int)(c.getX()/cellSize) + 1;
+		int row = (int)(y/cellSize) + 1; 
+		int col = (int)(x/cellSize) + 1;
 
 		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " + 
-		c + " is out of world's bounds";
+		new Coord(x, y) + " is out of world's bounds";
 		
 		return this.cells[row][col];
 	}
@@ -204,17 +224,101 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface netinterf) {
-		ArrayList<NetworkInterface> ni = new ArrayList<NetworkInterface>();
-		ni.clear();
+		final ArrayList<NetworkInterface> ni = new ArrayList<NetworkInterface>();
+		visitNearInterfaces(netinterf, new InterfaceVisitor() {
+			public void visit(NetworkInterface i) {
+				ni.add(i);
+			}
+		});
+		return ni;
+	}
+
+	/**
+	 * Visits all interfaces using the same technology and channel that are in
+	 * neighboring cells. The cells' interface lists are read directly, so
+	 * no objects are created. If the interface's range is larger than the
+	 * cell size, the cells are visited as far as the range reaches.
+	 * The cells are visited row by row.
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface netinterf,
+			InterfaceVisitor visitor) {
+		if (!ginterfaces.containsKey(netinterf)) {
+			return;
+		}
+
+		DTNHost host = netinterf.getHost();
+		HostPositions positions = host.getPositions();
+		int address = host.getAddress();
+		// +1 due empty cells on both sides of the matrix
+		int row = (int)(positions.getY(address)/cellSize) + 1;
+		int col = (int)(positions.getX(address)/cellSize) + 1;
+		int reach = getReach(netinterf);
+
+		int lastRow = Math.min(row + reach, rows + 1);
+		int lastCol = Math.min(col + reach, cols + 1);
+		for (int i=Math.max(row - reach, 0); i <= lastRow; i++) {
+			for (int j=Math.max(col - reach, 0); j <= lastCol; j++) {
+				ArrayList<NetworkInterface> list = cells[i][j].interfaces;
+				for (int k=0, n=list.size(); k < n; k++) {
+					visitor.visit(list.get(k));
+				}
+			}
+		}
+	}
 
+	/**
+	 * Returns those of the candidate interfaces that are in the neighboring
+	 * cells, in the same order as {@link #getNearInterfaces(NetworkInterface)}
+	 * would return them (i.e., ordered by the cell and the position in 
+	 * the cell). 
+	 */
+	@Override
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface netinterf, Collection<NetworkInterface> candidates){
+		ArrayList<NetworkInterface> ni = new ArrayList<NetworkInterface>();
+		
 		GridCell loc = (GridCell)ginterfaces.get(netinterf);
-		if (loc != null) {	
-			GridCell[] neighbors = 
-				getNeighborCellsByCoord(netinterf.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				ni.addAll(neighbors[i].getInterfaces());
+		if (loc == null) {
+			return ni;
+		}
+		
+		DTNHost host = netinterf.getHost();
+		HostPositions positions = host.getPositions();
+		int address = host.getAddress();
+		int reach = getReach(netinterf);
+		int width = 2 * reach + 1;
+		// +1 due empty cells on both sides of the matrix
+		int firstRow = (int)(positions.getY(address)/cellSize) + 1 - reach;
+		int firstCol = (int)(positions.getX(address)/cellSize) + 1 - reach;
+		long[] order = new long[candidates.size()];
+		
+		for (NetworkInterface c : candidates) {
+			GridCell cell = ginterfaces.get(c);
+			int dRow = cell.row - firstRow;
+			int dCol = cell.col - firstCol;
+			if (dRow >= 0 && dRow < width && dCol >= 0 && dCol < width) {
+				/* sort key: index of the cell, then index in the cell */
+				order[ni.size()] = ((long)(dRow * width + dCol) << 32) | 
+					cell.getInterfaces().indexOf(c);
+				ni.add(c);
+			}
+		}
+		
+		/* insertion sort; there are only a few interfaces in range */
+		for (int i=1, n=ni.size(); i < n; i++) {
+			long key = order[i];
+			NetworkInterface value = ni.get(i);
+			int j = i - 1;
+			while (j >= 0 && order[j] > key) {
+				order[j+1] = order[j];
+				ni.set(j+1, ni.get(j));
+				j--;
 			}
+			order[j+1] = key;
+			ni.set(j+1, value);
 		}
+		
 		return ni;
 	}
 
@@ -236,8 +340,13 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		// how large array is initially chosen
 		private static final int EXPECTED_INTERFACE_COUNT = 5;
 		private ArrayList<NetworkInterface> interfaces;
+		/** row and column of the cell in the grid */
+		private int row;
+		private int col;
 
-		private GridCell() {
+		private GridCell(int row, int col) {
+			this.row = row;
+			this.col = col;
 			this.interfaces = new ArrayList<NetworkInterface>(
 					EXPECTED_INTERFACE_COUNT);
 		}
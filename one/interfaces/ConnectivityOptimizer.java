@@ -4,7 +4,11 @@
  */
 package interfaces;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import core.NetworkInterface;
 
@@ -40,9 +44,63 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Calls the visitor for every network interface that
+	 * {@link #getNearInterfaces(NetworkInterface)} would return, in the same
+	 * order, but without collecting them to a new collection. Subclasses
+	 * should override this with an implementation that doesn't allocate
+	 * anything.
+	 * 
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for the interfaces
+	 */
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		for (NetworkInterface i : getNearInterfaces(ni)) {
+			visitor.visit(i);
+		}
+	}
+
+	/**
+	 * Finds those of the given candidate interfaces that
+	 * {@link #getNearInterfaces(NetworkInterface)} would return. The
+	 * interfaces are returned in the same order as that method would return
+	 * them. Subclasses may override this with a faster implementation.
+	 * 
+	 * @param ni network interface that needs to be connected
+	 * @param candidates The interfaces that are accepted
+	 * @return The accepted interfaces within proximity
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(NetworkInterface ni,
+			Collection<NetworkInterface> candidates) {
+		Set<NetworkInterface> accepted = 
+			new HashSet<NetworkInterface>(candidates);
+		List<NetworkInterface> near = new ArrayList<NetworkInterface>();
+		
+		for (NetworkInterface i : getNearInterfaces(ni)) {
+			if (accepted.contains(i)) {
+				near.add(i);
+			}
+		}
+		return near;
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Visitor of the near interfaces
+	 * @see ConnectivityOptimizer#visitNearInterfaces(NetworkInterface,
+	 * InterfaceVisitor)
+	 */
+	public interface InterfaceVisitor {
+		/**
+		 * Called for a network interface that is near
+		 * @param ni The near interface
+		 */
+		public void visit(NetworkInterface ni);
+	}
 }
@@ -4,13 +4,12 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.Connection;
 import core.DTNHost;
 import core.NetworkInterface;
 import core.Settings;
 import core.VBRConnection;
+import interfaces.ConnectivityOptimizer.InterfaceVisitor;
 
 /**
  * A simple Network Interface that provides a variable bit-rate service, where
@@ -21,6 +20,12 @@ import core.VBRConnection;
 public class InterferenceLimitedInterface extends NetworkInterface {
 	protected int currentTransmitSpeed;
 	protected int numberOfTransmissions;
+	/** tries to connect to the visited interfaces (see {@link #update()}) */
+	private final InterfaceVisitor connector = new InterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+	};
 
 	public InterferenceLimitedInterface(Settings s) {
 		super(s);
@@ -62,9 +67,9 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 	public void connect(NetworkInterface anotherInterface) {
 		if (isScanning() 
 				&& anotherInterface.getHost().isActive()
-				&& isWithinRange(anotherInterface)
+				&& (this != anotherInterface)
 				&& !isConnected(anotherInterface) 
-				&& (this != anotherInterface)) {
+				&& isWithinRange(anotherInterface)) {
 			// new contact within range
 
 			Connection con = new VBRConnection(this.host, this,
@@ -95,10 +100,7 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces = 
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) 
-			connect(i);
+		visitNearInterfaces(connector);
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
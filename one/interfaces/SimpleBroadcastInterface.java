@@ -4,19 +4,25 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.CBRConnection;
 import core.Connection;
 import core.DTNHost;
 import core.NetworkInterface;
 import core.Settings;
+import interfaces.ConnectivityOptimizer.InterfaceVisitor;
 
 /**
  * A simple Network Interface that provides a constant bit-rate service, where
  * one transmission can be on at a time.
  */
 public class SimpleBroadcastInterface extends NetworkInterface {
+	/** tries to connect to the visited interfaces (see {@link #update()}) */
+	private final InterfaceVisitor connector = new InterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+	};
+
 	/**
 	 * Reads the interface settings from the Settings file
 	 *  
@@ -43,11 +49,13 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 	 * @param anotherInterface The interface to connect to
 	 */
 	public void connect(NetworkInterface anotherInterface) {
+		/* cheap checks first; e.g., the other direction of an existing 
+		 * connection is rejected before calculating the distance */
 		if (isScanning()  
 				&& anotherInterface.getHost().isActive() 
-				&& isWithinRange(anotherInterface) 
+				&& (this != anotherInterface)
 				&& !isConnected(anotherInterface)
-				&& (this != anotherInterface)) {
+				&& isWithinRange(anotherInterface)) {
 			// new contact within range
 			// connection speed is the lower one of the two speeds 
 			int conSpeed = anotherInterface.getTransmitSpeed();
@@ -56,7 +64,8 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			}
 
 			Connection con = new CBRConnection(this.host, this, 
-					anotherInterface.getHost(), anotherInterface, conSpeed);
+					anotherInterface.getHost(), anotherInterface, conSpeed,
+					getTransferCompletionScheduler());
 			connect(con,anotherInterface);
 		}
 	}
@@ -84,11 +93,7 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
-		}
+		visitNearInterfaces(connector);
 	}
 
 	/** 
@@ -105,7 +110,8 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			}
 
 			Connection con = new CBRConnection(this.host, this, 
-					anotherInterface.getHost(), anotherInterface, conSpeed);
+					anotherInterface.getHost(), anotherInterface, conSpeed,
+					getTransferCompletionScheduler());
 			connect(con,anotherInterface);
 		}
 	}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+import core.DTNHost;
+import core.DTNSim;
+import core.HostPositions;
+import core.NetworkInterface;
+import core.SimContext;
+
+/**
+ * Overlay grid like {@link ConnectivityGrid}, but only the cells that have
+ * interfaces in them exist. The cells are kept in a hash map by their
+ * location and a cell is removed when its last interface leaves, so the
+ * memory use depends on the number of occupied cells instead of the size
+ * of the world. Negative coordinates are supported too.
+ * <P>
+ * The near interfaces are returned in the same order as
+ * {@link ConnectivityGrid} returns them, so the simulation results are
+ * the same with both grids.
+ * </P>
+ */
+public class SparseConnectivityGrid extends ConnectivityOptimizer {
+	/** the occupied cells by their key (see {@link #cellKey(long, long)}) */
+	private HashMap<Long, GridCell> cells;
+	private HashMap<NetworkInterface, GridCell> ginterfaces;
+	private int cellSize;
+
+	static {
+		DTNSim.registerForReset(SparseConnectivityGrid.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Removes the grid objects of the current simulation context
+	 */
+	public static void reset() {
+		SimContext.getCurrent().setState(SparseConnectivityGrid.class, null);
+	}
+
+	/**
+	 * Returns the grid objects of the current simulation context
+	 * @return The grid objects mapped by their keys
+	 */
+	@SuppressWarnings("unchecked")
+	private static HashMap<Integer,SparseConnectivityGrid> getGridObjects() {
+		SimContext context = SimContext.getCurrent();
+		HashMap<Integer,SparseConnectivityGrid> gridobjects =
+			(HashMap<Integer,SparseConnectivityGrid>)context.getState(
+					SparseConnectivityGrid.class);
+		if (gridobjects == null) {
+			gridobjects = new HashMap<Integer,SparseConnectivityGrid>();
+			context.setState(SparseConnectivityGrid.class, gridobjects);
+		}
+		return gridobjects;
+	}
+
+	/**
+	 * Creates a new sparse overlay connectivity grid
+	 * @param cellSize Cell's edge's length (must be larger than the largest
+	 * 	radio coverage's diameter)
+	 */
+	private SparseConnectivityGrid(int cellSize) {
+		this.cellSize = cellSize;
+		this.cells = new HashMap<Long, GridCell>();
+		this.ginterfaces = new HashMap<NetworkInterface, GridCell>();
+	}
+
+	/**
+	 * Returns a sparse connectivity grid object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param cellSize Cell's edge's length (must be larger than the largest
+	 * 	radio coverage's diameter)
+	 * @return The connectivity grid object for a specific interface
+	 */
+	public static SparseConnectivityGrid SparseConnectivityGridFactory(
+			int key, double cellSize) {
+		HashMap<Integer,SparseConnectivityGrid> gridobjects = getGridObjects();
+		SparseConnectivityGrid grid = gridobjects.get(key);
+		if (grid == null) {
+			grid = new SparseConnectivityGrid((int)Math.ceil(cellSize));
+			gridobjects.put(key, grid);
+		}
+		return grid;
+	}
+
+	/**
+	 * Adds a network interface to the overlay grid
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		GridCell c = cellFor(ni, true);
+		c.interfaces.add(ni);
+		ginterfaces.put(ni, c);
+	}
+
+	/**
+	 * Removes a network interface from the overlay grid
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		GridCell c = ginterfaces.remove(ni);
+		if (c != null) {
+			removeFromCell(ni, c);
+		}
+	}
+
+	/**
+	 * Adds interfaces to overlay grid
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Checks and updates (if necessary) interface's position in the grid
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		GridCell oldCell = ginterfaces.get(ni);
+		DTNHost host = ni.getHost();
+		HostPositions positions = host.getPositions();
+		int address = host.getAddress();
+		long row = cellIndex(positions.getY(address));
+		long col = cellIndex(positions.getX(address));
+
+		if (oldCell.row != row || oldCell.col != col) {
+			GridCell newCell = getCell(row, col, true);
+			newCell.interfaces.add(ni);
+			removeFromCell(ni, oldCell);
+			ginterfaces.put(ni, newCell);
+		}
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return ginterfaces.keySet();
+	}
+
+	/**
+	 * Returns all interfaces using the same technology and channel that are in
+	 * neighboring cells
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface netinterf) {
+		final ArrayList<NetworkInterface> ni = new ArrayList<NetworkInterface>();
+		visitNearInterfaces(netinterf, new InterfaceVisitor() {
+			public void visit(NetworkInterface i) {
+				ni.add(i);
+			}
+		});
+		return ni;
+	}
+
+	/**
+	 * Visits all interfaces using the same technology and channel that are in
+	 * neighboring cells (in the same order as {@link ConnectivityGrid}).
+	 * If the interface's range is larger than the cell size, the cells are
+	 * visited as far as the range reaches.
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface netinterf,
+			InterfaceVisitor visitor) {
+		GridCell loc = ginterfaces.get(netinterf);
+		if (loc == null) {
+			return;
+		}
+
+		int reach = getReach(netinterf);
+		for (long i=loc.row-reach; i <= loc.row+reach; i++) {
+			for (long j=loc.col-reach; j <= loc.col+reach; j++) {
+				GridCell cell = getCell(i, j, false);
+				if (cell == null) {
+					continue;
+				}
+				ArrayList<NetworkInterface> list = cell.interfaces;
+				for (int k=0, n=list.size(); k < n; k++) {
+					visitor.visit(list.get(k));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns how many cells away from its own cell an interface's range
+	 * can reach (at least one)
+	 * @param ni The interface
+	 * @return Number of cells to check on each side of the interface's cell
+	 */
+	private int getReach(NetworkInterface ni) {
+		double range = ni.getTransmitRange();
+		if (range <= cellSize) {
+			return 1;
+		}
+		return (int)Math.ceil(range / cellSize);
+	}
+
+	/**
+	 * Returns the cell where the interface's host is
+	 * @param ni The interface
+	 * @param create If true, the cell is created if it doesn't exist
+	 * @return The cell (or null if it doesn't exist and wasn't created)
+	 */
+	private GridCell cellFor(NetworkInterface ni, boolean create) {
+		DTNHost host = ni.getHost();
+		HostPositions positions = host.getPositions();
+		int address = host.getAddress();
+		return getCell(cellIndex(positions.getY(address)),
+				cellIndex(positions.getX(address)), create);
+	}
+
+	/**
+	 * Returns the cell at the given row and column
+	 * @param row Row of the cell
+	 * @param col Column of the cell
+	 * @param create If true, the cell is created if it doesn't exist
+	 * @return The cell (or null if it doesn't exist and wasn't created)
+	 */
+	private GridCell getCell(long row, long col, boolean create) {
+		Long key = cellKey(row, col);
+		GridCell cell = cells.get(key);
+		if (cell == null && create) {
+			cell = new GridCell(row, col);
+			cells.put(key, cell);
+		}
+		return cell;
+	}
+
+	/**
+	 * Removes an interface from a cell and removes the cell from the grid
+	 * if it becomes empty
+	 * @param ni The interface to remove
+	 * @param cell The cell where the interface is
+	 */
+	private void removeFromCell(NetworkInterface ni, GridCell cell) {
+		boolean removeOk = cell.interfaces.remove(ni);
+		assert removeOk : "interface " + ni +
+			" not found from cell with " + cell.interfaces;
+		if (cell.interfaces.isEmpty()) {
+			cells.remove(cellKey(cell.row, cell.col));
+		}
+	}
+
+	/**
+	 * Returns the index of the row or column where a coordinate is
+	 * @param coordinate The x or y coordinate
+	 * @return The row or column index
+	 */
+	private long cellIndex(double coordinate) {
+		return (long)Math.floor(coordinate / cellSize);
+	}
+
+	/**
+	 * Returns the hash map key for a cell
+	 * @param row Row of the cell
+	 * @param col Column of the cell
+	 * @return The key
+	 */
+	private static Long cellKey(long row, long col) {
+		return (row << 32) ^ (col & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns a string representation of the grid
+	 * @return a string representation of the grid
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + this.cells.size() +
+			" occupied cells, cell size=" + this.cellSize;
+	}
+
+	/**
+	 * A single occupied cell in the grid
+	 */
+	private static class GridCell {
+		private long row;
+		private long col;
+		private ArrayList<NetworkInterface> interfaces;
+
+		private GridCell(long row, long col) {
+			this.row = row;
+			this.col = col;
+			this.interfaces = new ArrayList<NetworkInterface>(2);
+		}
+	}
+}
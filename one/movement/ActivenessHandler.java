@@ -70,10 +70,12 @@ public class ActivenessHandler {
 	}
 	
 	/**
-	 * Returns true if node should be active at the moment
+	 * Returns true if node should be active at the moment. Synchronized 
+	 * because the handler is shared by all nodes of a group and nodes may be
+	 * moved in parallel.
 	 * @return true if node should be active at the moment
 	 */
-	public boolean isActive() {
+	public synchronized boolean isActive() {
 		if (this.activeTimes == null) {
 			return true; // no inactive times 
 		}
@@ -11,6 +11,7 @@ import java.util.List;
 import movement.map.SimMap;
 import core.Coord;
 import core.DTNSim;
+import core.SimContext;
 
 /**
  * This class controls busses and passengers that can use the bus. 
@@ -22,8 +23,6 @@ import core.DTNSim;
 public class BusControlSystem {
 	public static final String BUS_CONTROL_SYSTEM_NR = "busControlSystemNr";
 	
-	private static HashMap<Integer, BusControlSystem> systems;
-	
 	private HashMap<Integer, BusMovement> busses;
 	private HashMap<Integer, BusTravellerMovement> travellers;
 	private List<Coord> busStops;
@@ -45,8 +44,11 @@ public class BusControlSystem {
 		travellers = new HashMap<Integer, BusTravellerMovement>();
 	}
 	
+	/**
+	 * Removes the bus control systems of the current simulation context
+	 */
 	public static void reset() {
-		systems = new HashMap<Integer, BusControlSystem>();
+		SimContext.getCurrent().setState(BusControlSystem.class, null);
 	}
 	
 	/**
@@ -82,9 +84,18 @@ public class BusControlSystem {
 	 * @param systemID unique ID of the system
 	 * @return The bus control system with the provided ID
 	 */
+	@SuppressWarnings("unchecked")
 	public static BusControlSystem getBusControlSystem(int systemID) {
 		Integer id = new Integer(systemID);
+		SimContext context = SimContext.getCurrent();
+		HashMap<Integer, BusControlSystem> systems = 
+			(HashMap<Integer, BusControlSystem>)context.getState(
+					BusControlSystem.class);
 		
+		if (systems == null) {
+			systems = new HashMap<Integer, BusControlSystem>();
+			context.setState(BusControlSystem.class, systems);
+		}
 		if (systems.containsKey(id)) {
 			return systems.get(id);
 		} else {
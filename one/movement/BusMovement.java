@@ -9,7 +9,9 @@ import java.util.List;
 
 import movement.map.MapNode;
 import core.Coord;
+import core.DTNSim;
 import core.Settings;
+import core.SimContext;
 
 /**
  * This class controls the movement of busses. It informs the bus control system
@@ -21,10 +23,14 @@ public class BusMovement extends MapRouteMovement {
 	
 	private BusControlSystem controlSystem;
 	private int id;
-	private static int nextID = 0;
 	private boolean startMode;
 	private List<Coord> stops;
 	
+	static {
+		DTNSim.registerForReset(BusMovement.class.getCanonicalName());
+		reset();
+	}
+	
 	/**
 	 * Creates a new instance of BusMovement
 	 * @param settings
@@ -34,7 +40,7 @@ public class BusMovement extends MapRouteMovement {
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
 		controlSystem.setMap(super.getMap());
-		this.id = nextID++;
+		this.id = getNextID();
 		controlSystem.registerBus(this);
 		startMode = true;
 		stops = new LinkedList<Coord>();
@@ -52,11 +58,31 @@ public class BusMovement extends MapRouteMovement {
 	public BusMovement(BusMovement proto) {
 		super(proto);
 		this.controlSystem = proto.controlSystem;
-		this.id = nextID++;
+		this.id = getNextID();
 		controlSystem.registerBus(this);
 		startMode = true;
 	}
 	
+	/**
+	 * Resets the bus IDs of the current simulation context
+	 */
+	public static void reset() {
+		SimContext.getCurrent().setState(BusMovement.class, null);
+	}
+
+	/**
+	 * Returns the next free ID of the current simulation context and 
+	 * increments the ID for subsequent calls
+	 * @return The next ID
+	 */
+	private static int getNextID() {
+		SimContext context = SimContext.getCurrent();
+		Integer nextID = (Integer)context.getState(BusMovement.class);
+		int id = (nextID == null ? 0 : nextID);
+		context.setState(BusMovement.class, id + 1);
+		return id;
+	}
+	
 	@Override
 	public Coord getInitialLocation() {
 		return (super.getInitialLocation()).clone();
@@ -11,7 +11,9 @@ import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
+import core.DTNSim;
 import core.Settings;
+import core.SimContext;
 
 /**
  * 
@@ -52,7 +54,10 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	
 	private boolean takeBus;
 	
-	private static int nextID = 0;
+	static {
+		DTNSim.registerForReset(BusTravellerMovement.class.getCanonicalName());
+		reset();
+	}
 	
 	/**
 	 * Creates a BusTravellerModel 
@@ -62,7 +67,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		super(settings);
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
-		id = nextID++;
+		id = getNextID();
 		controlSystem.registerTraveller(this);
 		nextPath = new Path();
 		state = STATE_WALKING_ELSEWHERE;
@@ -89,7 +94,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			location = proto.location.clone();
 		}
 		nextPath = proto.nextPath;
-		id = nextID++;
+		id = getNextID();
 		controlSystem.registerTraveller(this);
 		probabilities = proto.probabilities;
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
@@ -350,8 +355,25 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		}
 	}
 	
+	/**
+	 * Resets the traveller IDs of the current simulation context
+	 */
 	public static void reset() {
-		nextID = 0;
+		SimContext.getCurrent().setState(BusTravellerMovement.class, null);
+	}
+
+	/**
+	 * Returns the next free ID of the current simulation context and 
+	 * increments the ID for subsequent calls
+	 * @return The next ID
+	 */
+	private static int getNextID() {
+		SimContext context = SimContext.getCurrent();
+		Integer nextID = (Integer)context.getState(
+				BusTravellerMovement.class);
+		int id = (nextID == null ? 0 : nextID);
+		context.setState(BusTravellerMovement.class, id + 1);
+		return id;
 	}
 	
 }
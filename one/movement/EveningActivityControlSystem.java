@@ -10,6 +10,7 @@ import java.util.Random;
 
 import core.Coord;
 import core.DTNSim;
+import core.SimContext;
 
 /**
  * This class controls the group mobility of the people meeting their friends in
@@ -25,9 +26,6 @@ public class EveningActivityControlSystem {
 	
 	private Random rng;
 	
-	private static HashMap<Integer, EveningActivityControlSystem> 
-		controlSystems;
-	
 	static {
 		DTNSim.registerForReset(EveningActivityControlSystem.class.
 				getCanonicalName());
@@ -43,8 +41,12 @@ public class EveningActivityControlSystem {
 		eveningActivityNodes = new HashMap<Integer, EveningActivityMovement>();
 	}
 
+	/**
+	 * Removes the control systems of the current simulation context
+	 */
 	public static void reset() {
-		controlSystems = new HashMap<Integer, EveningActivityControlSystem>();
+		SimContext.getCurrent().setState(EveningActivityControlSystem.class,
+				null);
 	}
 	
 	/**
@@ -125,8 +127,20 @@ public class EveningActivityControlSystem {
 	 * @param id unique ID of the EveningActivityControlSystem
 	 * @return The EveningActivityControlSystem with the provided ID
 	 */
+	@SuppressWarnings("unchecked")
 	public static EveningActivityControlSystem getEveningActivityControlSystem(
 			int id) {
+		SimContext context = SimContext.getCurrent();
+		HashMap<Integer, EveningActivityControlSystem> controlSystems = 
+			(HashMap<Integer, EveningActivityControlSystem>)context.getState(
+					EveningActivityControlSystem.class);
+		
+		if (controlSystems == null) {
+			controlSystems = 
+				new HashMap<Integer, EveningActivityControlSystem>();
+			context.setState(EveningActivityControlSystem.class, 
+					controlSystems);
+		}
 		if (controlSystems.containsKey(new Integer(id))) {
 			return controlSystems.get(new Integer(id));
 		} else {
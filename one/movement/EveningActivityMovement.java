@@ -14,7 +14,9 @@ import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
+import core.DTNSim;
 import core.Settings;
+import core.SimContext;
 
 /**
  * A Class to model movement when people are out shopping or doing other 
@@ -44,7 +46,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	public static final String MAX_WAIT_TIME_SETTING = 
 		"maxAfterShoppingStopTime";
 	
-	private static int nrOfMeetingSpots = 10;
+	private int nrOfMeetingSpots = 10;
 	
 	private int mode;
 	private boolean ready;
@@ -60,7 +62,11 @@ public class EveningActivityMovement extends MapBasedMovement
 	
 	private int id;
 	
-	private static int nextID = 0;
+	static {
+		DTNSim.registerForReset(EveningActivityMovement.class.
+				getCanonicalName());
+		reset();
+	}
 	
 	private int minGroupSize;
 	private int maxGroupSize;
@@ -120,7 +126,7 @@ public class EveningActivityMovement extends MapBasedMovement
 			}
 		}
 		
-		this.id = nextID++;
+		this.id = getNextID();
 		
 		int scsID = settings.getInt(EVENING_ACTIVITY_CONTROL_SYSTEM_NR_SETTING);
 		
@@ -144,7 +150,7 @@ public class EveningActivityMovement extends MapBasedMovement
 		super(proto);
 		this.pathFinder = proto.pathFinder;
 		this.mode = proto.mode;
-		this.id = nextID++;
+		this.id = getNextID();
 		scs = proto.scs;
 		scs.addEveningActivityNode(this);
 		this.setMinGroupSize(proto.getMinGroupSize());
@@ -276,8 +282,25 @@ public class EveningActivityMovement extends MapBasedMovement
 		return readyToShop;
 	}
 
+	/**
+	 * Resets the node IDs of the current simulation context
+	 */
 	public static void reset() {
-		nextID = 0;
+		SimContext.getCurrent().setState(EveningActivityMovement.class, null);
+	}
+
+	/**
+	 * Returns the next free ID of the current simulation context and 
+	 * increments the ID for subsequent calls
+	 * @return The next ID
+	 */
+	private static int getNextID() {
+		SimContext context = SimContext.getCurrent();
+		Integer nextID = (Integer)context.getState(
+				EveningActivityMovement.class);
+		int id = (nextID == null ? 0 : nextID);
+		context.setState(EveningActivityMovement.class, id + 1);
+		return id;
 	}
 
 	public int getMinGroupSize() {
@@ -16,6 +16,7 @@ import core.Coord;
 import core.DTNSim;
 import core.Settings;
 import core.SimClock;
+import core.SimContext;
 import core.Tuple;
 
 /**
@@ -31,24 +32,12 @@ public class ExternalMovement extends MovementModel {
 	
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
-	private static ExternalMovementReader reader;
-	private static String inputFileName;
-	
-	/** mapping of external id to movement model */
-	private static Map<String, ExternalMovement> idMapping;
-	/** initial locations for nodes */
-	private static List<Tuple<String, Coord>> initLocations;
-	/** time of the very first location data */
-	private static double initTime;
-	/** sampling interval (seconds) of the location data */
-	private static double samplingInterval;
-	/** last read time stamp after preloading */
-	private static double lastPreloadTime;
-	/** how many time intervals to load on every preload run */
-	private static double nrofPreload = 10;
 	/** minimum number intervals that should be preloaded ahead of sim time */
 	private static final double MIN_AHEAD_INTERVALS = 2;
-		
+	
+	/** location data shared by all the nodes of the simulation (run) */
+	private ExternalData data;
+	
 	/** the very first location of the node */
 	private Coord intialLocation;
 	/** queue of path-start-time, path tuples */
@@ -75,26 +64,30 @@ public class ExternalMovement extends MovementModel {
 	 */
 	public ExternalMovement(Settings settings) {
 		super(settings);
+		SimContext context = SimContext.getCurrent();
 		
-		if (idMapping == null) {
+		data = (ExternalData)context.getState(ExternalMovement.class);
+		if (data == null) {
 			// run these the first time object is created or after reset call
 			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
-			idMapping = new HashMap<String, ExternalMovement>();
-			inputFileName = s.getSetting(MOVEMENT_FILE_S);
-			reader = new ExternalMovementReader(inputFileName);
+			data = new ExternalData();
+			data.idMapping = new HashMap<String, ExternalMovement>();
+			data.inputFileName = s.getSetting(MOVEMENT_FILE_S);
+			data.reader = new ExternalMovementReader(data.inputFileName);
 			
-			initLocations = reader.readNextMovements();
-			initTime = reader.getLastTimeStamp();
-			samplingInterval = -1;
-			lastPreloadTime = -1;
+			data.initLocations = data.reader.readNextMovements();
+			data.initTime = data.reader.getLastTimeStamp();
+			data.samplingInterval = -1;
+			data.lastPreloadTime = -1;
 			
 			s.setNameSpace(EXTERNAL_MOVEMENT_NS);
 			if (s.contains(NROF_PRELOAD_S)) {
-				nrofPreload = s.getInt(NROF_PRELOAD_S);
-				if (nrofPreload <= 0) {
-					nrofPreload = 1;
+				data.nrofPreload = s.getInt(NROF_PRELOAD_S);
+				if (data.nrofPreload <= 0) {
+					data.nrofPreload = 1;
 				}
 			}
+			context.setState(ExternalMovement.class, data);
 		}
 	}
 	
@@ -103,20 +96,21 @@ public class ExternalMovement extends MovementModel {
 	 * location queue.
 	 * @param mm The movement model to copy from
 	 */
-	private ExternalMovement(MovementModel mm) {
+	private ExternalMovement(ExternalMovement mm) {
 		super(mm);
 		
+		data = mm.data;
 		pathQueue = new LinkedList<Tuple<Double, Path>>();
 		latestPath = null;
 		
-		if (initLocations.size() > 0) { // we have location data left
+		if (data.initLocations.size() > 0) { // we have location data left
 			// gets a new location from the list
-			Tuple<String, Coord> initLoc = initLocations.remove(0); 
+			Tuple<String, Coord> initLoc = data.initLocations.remove(0); 
 			this.intialLocation = this.latestLocation = initLoc.getValue();
-			this.latestPathStartTime = initTime;
+			this.latestPathStartTime = data.initTime;
 			
 			// puts the new model to model map for later updates
-			idMapping.put(initLoc.getKey(), this);
+			data.idMapping.put(initLoc.getKey(), this);
 			isActive = true;
 		}
 		else {
@@ -126,24 +120,6 @@ public class ExternalMovement extends MovementModel {
 		}		
 	}
 	
-	/**
-	 * Checks if more paths should be preloaded and preloads them if
-	 * needed.
-	 */
-	private static void checkPathNeed() {
-		if (samplingInterval == -1) { // first preload
-			lastPreloadTime = readMorePaths();
-		}
-		
-		if (lastPreloadTime != Double.NaN && SimClock.getTime() >= 
-				lastPreloadTime - (samplingInterval * MIN_AHEAD_INTERVALS) ) {
-			for (int i=0; i < nrofPreload && 
-					lastPreloadTime != Double.NaN; i++) {
-				lastPreloadTime = readMorePaths();
-			}
-		}
-	}
-	
 	@Override
 	public Coord getInitialLocation() {
 		return this.intialLocation;
@@ -162,7 +138,7 @@ public class ExternalMovement extends MovementModel {
 	 * @param time When should the node be there
 	 */
 	private void addLocation(Coord loc, double time) {
-		assert samplingInterval > 0 : "Non-positive sampling interval!";
+		assert data.samplingInterval > 0 : "Non-positive sampling interval!";
 		
 		if (loc.equals(latestLocation)) { // node didn't move
 			if (latestPath != null) {
@@ -180,7 +156,8 @@ public class ExternalMovement extends MovementModel {
 			latestPath = new Path();			
 		}
 			
-		double speed = loc.distance(this.latestLocation) / samplingInterval;		
+		double speed = loc.distance(this.latestLocation) / 
+			data.samplingInterval;		
 		latestPath.addWaypoint(loc, speed);
 
 		this.latestLocation = loc;
@@ -204,7 +181,7 @@ public class ExternalMovement extends MovementModel {
 	public Path getPath() {
 		Path p;
 		
-		checkPathNeed(); // check if we should preload more paths		
+		data.checkPathNeed(); // check if we should preload more paths		
 		
 		if (SimClock.getTime() < this.nextPathAvailable()) {
 			return null;
@@ -223,12 +200,12 @@ public class ExternalMovement extends MovementModel {
 	
 	@Override
 	public int getMaxX() {
-		return (int)(reader.getMaxX() - reader.getMinX()) + 1;
+		return (int)(data.reader.getMaxX() - data.reader.getMinX()) + 1;
 	}
 
 	@Override
 	public int getMaxY() {
-		return (int)(reader.getMaxY() - reader.getMinY()) + 1;
+		return (int)(data.reader.getMaxY() - data.reader.getMinY()) + 1;
 	}
 
 	
@@ -238,39 +215,79 @@ public class ExternalMovement extends MovementModel {
 	}
 	
 	/**
-	 * Reads paths for the next time instance from the reader
-	 * @return The time stamp of the reading or Double.NaN if no movements
-	 * were read.
+	 * Reset state so that next instance will have a fresh state
+	 */
+	public static void reset() {
+		SimContext.getCurrent().setState(ExternalMovement.class, null);
+	}
+	
+	/**
+	 * Location data of a simulation run. Shared by all the external
+	 * movement models of the run and stored in the run's 
+	 * {@link SimContext}.
 	 */
-	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
-		double time = reader.getLastTimeStamp();
+	private static class ExternalData {
+		private ExternalMovementReader reader;
+		private String inputFileName;
 		
-		if (samplingInterval == -1) {
-			samplingInterval = time - initTime;
-		}
+		/** mapping of external id to movement model */
+		private Map<String, ExternalMovement> idMapping;
+		/** initial locations for nodes */
+		private List<Tuple<String, Coord>> initLocations;
+		/** time of the very first location data */
+		private double initTime;
+		/** sampling interval (seconds) of the location data */
+		private double samplingInterval;
+		/** last read time stamp after preloading */
+		private double lastPreloadTime;
+		/** how many time intervals to load on every preload run */
+		private double nrofPreload = 10;
 		
-		for (Tuple<String, Coord> t : list) {
-			ExternalMovement em = idMapping.get(t.getKey());
-			if (em != null) { // skip unknown IDs, i.e. IDs not mentioned in...
-				// ...init phase or if there are more IDs than nodes
-				em.addLocation(t.getValue(), time);
+		/**
+		 * Checks if more paths should be preloaded and preloads them if
+		 * needed.
+		 */
+		private void checkPathNeed() {
+			if (samplingInterval == -1) { // first preload
+				lastPreloadTime = readMorePaths();
+			}
+			
+			if (lastPreloadTime != Double.NaN && SimClock.getTime() >= 
+					lastPreloadTime - (samplingInterval*MIN_AHEAD_INTERVALS)) {
+				for (int i=0; i < nrofPreload && 
+						lastPreloadTime != Double.NaN; i++) {
+					lastPreloadTime = readMorePaths();
+				}
 			}
 		}
 		
-		if (list.size() > 0) {
-			return time;
-		}
-		else {
-			return Double.NaN;
+		/**
+		 * Reads paths for the next time instance from the reader
+		 * @return The time stamp of the reading or Double.NaN if no movements
+		 * were read.
+		 */
+		private double readMorePaths() {
+			List<Tuple<String, Coord>> list = reader.readNextMovements();
+			double time = reader.getLastTimeStamp();
+			
+			if (samplingInterval == -1) {
+				samplingInterval = time - initTime;
+			}
+			
+			for (Tuple<String, Coord> t : list) {
+				ExternalMovement em = idMapping.get(t.getKey());
+				if (em != null) { // skip unknown IDs, i.e. IDs not mentioned...
+					// ...in init phase or if there are more IDs than nodes
+					em.addLocation(t.getValue(), time);
+				}
+			}
+			
+			if (list.size() > 0) {
+				return time;
+			}
+			else {
+				return Double.NaN;
+			}
 		}
 	}
-	
-	/**
-	 * Reset state so that next instance will have a fresh state
-	 */
-	public static void reset() {
-		idMapping = null;
-	}
-
 }
@@ -25,26 +25,26 @@ public class GaussMarkovModel extends MovementModel {
 	
 	private Random speedGaussianRNG;
 	private Random directionGaussianRNG;
-	private static double alpha = 0.5;
-	private static double meanSpeed = 2.0;
-	private static double speedVariance = 0.5;
-	private static int timeInterval = 10;
-	private static double phaseVariance = 1.0;
+	private double alpha = 0.5;
+	private double meanSpeed = 2.0;
+	private double speedVariance = 0.5;
+	private int timeInterval = 10;
+	private double phaseVariance = 1.0;
 	private double meanDirection = rng.nextDouble()*2*Math.PI;
 	
 	public GaussMarkovModel(Settings s) {
 		super(s);
 		Settings settings = new Settings(GAUSS_MARKOV_NS);
 		if(settings.contains(ALPHA))
-			GaussMarkovModel.alpha = settings.getDouble(ALPHA);
+			this.alpha = settings.getDouble(ALPHA);
 		if(settings.contains(MEANSPEED))
-			GaussMarkovModel.meanSpeed = settings.getDouble(MEANSPEED);
+			this.meanSpeed = settings.getDouble(MEANSPEED);
 		if(settings.contains(SPEEDVARIANCE))
-			GaussMarkovModel.speedVariance = settings.getDouble(SPEEDVARIANCE);
+			this.speedVariance = settings.getDouble(SPEEDVARIANCE);
 		if(settings.contains(PHASEVARIANCE))
-			GaussMarkovModel.phaseVariance = settings.getDouble(PHASEVARIANCE);
+			this.phaseVariance = settings.getDouble(PHASEVARIANCE);
 		if(settings.contains(TIMEINTERVAL))
-			GaussMarkovModel.timeInterval = settings.getInt(TIMEINTERVAL);
+			this.timeInterval = settings.getInt(TIMEINTERVAL);
 		
 		sN = Double.NaN;
 		dN = Double.NaN;
@@ -65,6 +65,11 @@ public class GaussMarkovModel extends MovementModel {
 		this.speedGaussianRNG = gmm.speedGaussianRNG;
 		this.directionGaussianRNG = gmm.directionGaussianRNG;
 		this.meanDirection = gmm.meanDirection;
+		this.alpha = gmm.alpha;
+		this.meanSpeed = gmm.meanSpeed;
+		this.speedVariance = gmm.speedVariance;
+		this.timeInterval = gmm.timeInterval;
+		this.phaseVariance = gmm.phaseVariance;
 		this.sN = Double.NaN;
 		this.dN = Double.NaN;
 	}
@@ -22,6 +22,7 @@ import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
 import core.SettingsError;
+import core.SimContext;
 import core.SimError;
 
 /**
@@ -60,10 +61,6 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	
 	/** how many map files are read */
 	private int nrofMapFilesRead = 0;
-	/** map cache -- in case last mm read the same map, use it without loading*/
-	private static SimMap cachedMap = null;
-	/** names of the previously cached map's files (for hit comparison) */
-	private static List<String> cachedMapFiles = null;
 	
 	/**
 	 * Creates a new MapBasedMovement based on a Settings object's settings.
@@ -266,20 +263,21 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		SimMap simMap;
 		Settings settings = new Settings(MAP_BASE_MOVEMENT_NS);
 		WKTMapReader r = new WKTMapReader(true);
+		MapCache cache = getMapCache();
 		
-		if (cachedMap == null) {
-			cachedMapFiles = new ArrayList<String>(); // no cache present
+		if (cache.cachedMap == null) {
+			cache.cachedMapFiles = new ArrayList<String>(); // no cache present
 		}
 		else { // something in cache
 			// check out if previously asked map was asked again
-			SimMap cached = checkCache(settings);
+			SimMap cached = checkCache(cache, settings);
 			if (cached != null) {
-				nrofMapFilesRead = cachedMapFiles.size();
+				nrofMapFilesRead = cache.cachedMapFiles.size();
 				return cached; // we had right map cached -> return it
 			}
 			else { // no hit -> reset cache
-				cachedMapFiles = new ArrayList<String>();
-				cachedMap = null;
+				cache.cachedMapFiles = new ArrayList<String>();
+				cache.cachedMap = null;
 			}
 		}
 
@@ -288,7 +286,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 
 			for (int i = 1; i <= nrofMapFiles; i++ ) {
 				String pathFile = settings.getSetting(FILE_S + i);
-				cachedMapFiles.add(pathFile);
+				cache.cachedMapFiles.add(pathFile);
 				r.addPaths(new File(pathFile), i);
 			}
 			
@@ -305,10 +303,24 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		simMap.translate(-offset.getX(), -offset.getY());
 		checkCoordValidity(simMap.getNodes());
 		
-		cachedMap = simMap;
+		cache.cachedMap = simMap;
 		return simMap;
 	}
 	
+	/**
+	 * Returns the map cache of the current simulation context
+	 * @return The map cache
+	 */
+	private static MapCache getMapCache() {
+		SimContext context = SimContext.getCurrent();
+		MapCache cache = (MapCache)context.getState(MapBasedMovement.class);
+		if (cache == null) {
+			cache = new MapCache();
+			context.setState(MapBasedMovement.class, cache);
+		}
+		return cache;
+	}
+	
 	/**
 	 * Checks that all map nodes can be reached from all other map nodes
 	 * @param nodes The list of nodes to check
@@ -375,25 +387,27 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	/**
 	 * Checks map cache if the requested map file(s) match to the cached
 	 * sim map
+	 * @param cache The map cache
 	 * @param settings The Settings where map file names are found 
 	 * @return A cached map or null if the cached map didn't match
 	 */
-	private SimMap checkCache(Settings settings) {
+	private SimMap checkCache(MapCache cache, Settings settings) {
 		int nrofMapFiles = settings.getInt(NROF_FILES_S);
 
-		if (nrofMapFiles != cachedMapFiles.size() || cachedMap == null) {
+		if (nrofMapFiles != cache.cachedMapFiles.size() || 
+				cache.cachedMap == null) {
 			return null; // wrong number of files
 		}
 		
 		for (int i = 1; i <= nrofMapFiles; i++ ) {
 			String pathFile = settings.getSetting(FILE_S + i);
-			if (!pathFile.equals(cachedMapFiles.get(i-1))) {
+			if (!pathFile.equals(cache.cachedMapFiles.get(i-1))) {
 				return null;	// found wrong file name
 			}
 		}
 		
 		// all files matched -> return cached map
-		return cachedMap;
+		return cache.cachedMap;
 	}
 	
 	@Override
@@ -429,4 +443,14 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		return true;
 	}
 	
+	/**
+	 * Map cache of a simulation context -- in case last mm read the same 
+	 * map, use it without loading
+	 */
+	private static class MapCache {
+		/** the cached map */
+		private SimMap cachedMap = null;
+		/** names of the previously cached map's files (for hit comparison) */
+		private List<String> cachedMapFiles = null;
+	}
 }
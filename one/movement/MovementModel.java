@@ -11,6 +11,7 @@ import core.DTNSim;
 import core.ModuleCommunicationBus;
 import core.Settings;
 import core.SimClock;
+import core.SimContext;
 import core.SimError;
 
 /**
@@ -42,8 +43,8 @@ public abstract class MovementModel {
 	/** movement models' rng seed -setting id ({@value})*/
 	public static final String RNG_SEED = "rngSeed";
 	
-	/** common rng for all movement models in the simulation */
-	protected static Random rng; 
+	/** common rng for all movement models in the simulation (run) */
+	protected Random rng = getContextRng(); 
 	
 	private ActivenessHandler ah;
 		
@@ -255,13 +256,36 @@ public abstract class MovementModel {
 	 */
 	public static void reset() {
 		System.out.print("Calling reset() in MovementModel\n");
+		SimContext.getCurrent().setState(MovementModel.class, createRng());
+	}
+	
+	/**
+	 * Returns the common rng of the movement models in the current 
+	 * simulation context
+	 * @return The rng
+	 */
+	private static Random getContextRng() {
+		SimContext context = SimContext.getCurrent();
+		Random r = (Random)context.getState(MovementModel.class);
+		if (r == null) { // context didn't exist when the class was reset
+			r = createRng();
+			context.setState(MovementModel.class, r);
+		}
+		return r;
+	}
+	
+	/**
+	 * Creates a new rng with the seed from the settings
+	 * @return The new rng
+	 */
+	private static Random createRng() {
 		Settings s = new Settings(MOVEMENT_MODEL_NS);
 		if (s.contains(RNG_SEED)) {
 			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
+			return new Random(seed);
 		}
 		else {
-			rng = new Random(0);
+			return new Random(0);
 		}
 	}
 	
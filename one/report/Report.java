@@ -107,6 +107,23 @@ public abstract class Report {
 			precision = DEF_PRECISION;
 		}
 		
+		outFileName = getOutputFileName(this.getClass().getSimpleName());
+		checkDirExistence(outFileName);
+	}
+	
+	/**
+	 * Returns the output file name of a report with the current settings.
+	 * If the report creates new output files on intervals, the returned
+	 * name is the prefix of the output files' names (see 
+	 * {@link #INTERVALLED_FORMAT}).
+	 * @param reportClass Name of the report class (without the package)
+	 * @return The output file name (including the path)
+	 */
+	public static String getOutputFileName(String reportClass) {
+		String outFileName;
+		Settings settings = new Settings(reportClass);
+		settings.setSecondaryNamespace(REPORT_NS);
+		
 		if (settings.contains(OUTPUT_SETTING)) {
 			outFileName = settings.getSetting(OUTPUT_SETTING);
 			// fill value place holders in the name
@@ -114,20 +131,22 @@ public abstract class Report {
 		}
 		else {
 			// no output name define -> construct one from report class' name
+			boolean intervalled = settings.contains(INTERVAL_SETTING) &&
+				settings.getDouble(INTERVAL_SETTING) != -1;
 			settings.setNameSpace(null);
+			String scenarioName = settings.valueFillString(settings.getSetting(
+					SimScenario.SCENARIO_NS + "." +	SimScenario.NAME_S));
 			String outDir = settings.getSetting(REPORTDIR_SETTING);
 			if (!outDir.endsWith("/")) {
 				outDir += "/";	// make sure dir ends with directory delimiter
 			}
-			outFileName = outDir + scenarioName + 
-				"_" + this.getClass().getSimpleName();
-			if (outputInterval == -1) {
+			outFileName = outDir + scenarioName + "_" + reportClass;
+			if (!intervalled) {
 				outFileName += OUT_SUFFIX; // no intervalled reports
 			}
-			
 		}
-				
-		checkDirExistence(outFileName);
+		
+		return outFileName;
 	}
 
 	/**
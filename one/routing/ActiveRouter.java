@@ -5,13 +5,15 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 
 import core.Connection;
 import core.DTNHost;
+import core.ExpiryListener;
+import core.ExpiryWheel;
 import core.Message;
 import core.MessageListener;
 import core.Settings;
@@ -31,15 +33,26 @@ public abstract class ActiveRouter extends MessageRouter {
 	/** should messages that final recipient marks as delivered be deleted
 	 * from message buffer */
 	protected boolean deleteDelivered;
+	/** Eviction policy -setting id ({@value}). Name of the policy that
+	 * decides which messages are dropped when the buffer is full (see the 
+	 * policy names in {@link EvictionPolicy}). 
+	 * Default={@link EvictionPolicy#OLDEST_RECEIVED}. */
+	public static final String EVICTION_POLICY_S = "evictionPolicy";
 	
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
-	/** how often TTL check (discarding old messages) is performed */
-	public static int TTL_CHECK_INTERVAL = 60;
 	/** connection(s) that are currently used for sending */
 	protected ArrayList<Connection> sendingConnections;
-	/** sim time when the last TTL check was done */
-	private double lastTtlCheck;
+	/** listener of the expiry timers of this router's messages */
+	private ExpiryListener expiryListener;
+	/** expiry timers of the buffered messages (by ID index) */
+	private MessageIdMap<ExpiryWheel.Timer> expiryTimers;
+	/** expired messages that were being sent when they expired */
+	private List<Message> expiredWhileSending;
+	/** name of the eviction policy */
+	private String evictionPolicyName;
+	/** the buffered messages in the order they should be dropped */
+	private EvictionPolicy evictionPolicy;
 	
 
 	/**
@@ -56,6 +69,13 @@ public abstract class ActiveRouter extends MessageRouter {
 		else {
 			this.deleteDelivered = false;
 		}
+		
+		if (s.contains(EVICTION_POLICY_S)) {
+			this.evictionPolicyName = s.getSetting(EVICTION_POLICY_S);
+		}
+		else {
+			this.evictionPolicyName = EvictionPolicy.OLDEST_RECEIVED;
+		}
 	}
 	
 	/**
@@ -65,13 +85,55 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ActiveRouter(ActiveRouter r) {
 		super(r);
 		this.deleteDelivered = r.deleteDelivered;
+		this.evictionPolicyName = r.evictionPolicyName;
 	}
 	
 	@Override
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
-		this.lastTtlCheck = 0;
+		this.expiryListener = new ExpiryListener() {
+			public void messageExpired(Message m) {
+				ActiveRouter.this.messageExpired(m);
+			}
+		};
+		this.expiryTimers = new MessageIdMap<ExpiryWheel.Timer>();
+		this.expiredWhileSending = new ArrayList<Message>(0);
+		this.evictionPolicy = EvictionPolicy.create(evictionPolicyName);
+	}
+	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		this.evictionPolicy.messageAdded(m);
+		/* hosts that are not in a world have no wheel (and no expiry) */
+		ExpiryWheel wheel = getHost().getExpiryWheel();
+		ExpiryWheel.Timer timer = null;
+		if (wheel != null) {
+			timer = wheel.schedule(this.expiryListener, m);
+		}
+		if (timer != null) {
+			timer = this.expiryTimers.put(m.getIdIndex(), timer);
+		}
+		else {
+			timer = this.expiryTimers.remove(m.getIdIndex());
+		}
+		if (timer != null) { // replaced a message with the same ID
+			wheel.cancel(timer);
+		}
+	}
+	
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			this.evictionPolicy.messageRemoved(m);
+			ExpiryWheel.Timer timer = this.expiryTimers.remove(m.getIdIndex());
+			if (timer != null) {
+				getHost().getExpiryWheel().cancel(timer);
+			}
+		}
+		return m;
 	}
 	
 	/**
@@ -91,12 +153,10 @@ public abstract class ActiveRouter extends MessageRouter {
 		/* do a copy to avoid concurrent modification exceptions 
 		 * (startTransfer may remove messages) */
 		ArrayList<Message> temp = 
-			new ArrayList<Message>(this.getMessageCollection());
+			new ArrayList<Message>(getMessagesFor(other));
 		for (Message m : temp) {
-			if (other == m.getTo()) {
-				if (startTransfer(m, con) == RCV_OK) {
-					return true;
-				}
+			if (startTransfer(m, con) == RCV_OK) {
+				return true;
 			}
 		}
 		return false;
@@ -142,6 +202,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	/**
 	 * Returns a list of connections this host currently has with other hosts.
+	 * The list is a read-only view (see {@link DTNHost#getConnections()}).
 	 * @return a list of connections this host currently has with other hosts
 	 */
 	protected List<Connection> getConnections() {
@@ -209,7 +270,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY; // only one connection at a time
 		}
 	
-		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ){
+		if ( hasMessage(m) || isDeliveredMessage(m) ){
 			return DENIED_OLD; // already seen this message -> reject it
 		}
 		
@@ -227,8 +288,9 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/** 
-	 * Removes messages from the buffer (oldest first) until
-	 * there's enough space for the new message.
+	 * Removes messages from the buffer (in the order of 
+	 * {@link #getOldestMessage(boolean)}) until there's enough space for 
+	 * the new message.
 	 * @param size Size of the new message 
 	 * transferred, the transfer is aborted before message is removed
 	 * @return True if enough space could be freed, false if not
@@ -256,14 +318,35 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops a message whose TTL has passed. If the message is being sent,
+	 * it is dropped when the transfer has finished or been aborted.
+	 * @param m The expired message
 	 */
-	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl(); 
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+	private void messageExpired(Message m) {
+		this.expiryTimers.remove(m.getIdIndex());
+		if (isSending(m.getId())) {
+			this.expiredWhileSending.add(m);
+		}
+		else {
+			deleteMessage(m.getId(), true);
+		}
+	}
+		
+	/**
+	 * Drops the messages of this router that expired while they were being
+	 * sent and whose transfer has ended
+	 */
+	private void dropExpiredWhileSending() {
+		for (int i=0; i<this.expiredWhileSending.size(); ) {
+			Message m = this.expiredWhileSending.get(i);
+			if (isSending(m.getId())) {
+				i++;
+				continue;
+			}
+			this.expiredWhileSending.remove(i);
+			/* the message may have been deleted after the transfer */
+			if (getMessage(m.getId()) == m) {
+				deleteMessage(m.getId(), true);
 			}
 		}
 	}
@@ -281,7 +364,9 @@ public abstract class ActiveRouter extends MessageRouter {
 
 	
 	/**
-	 * Returns the oldest (by receive time) message in the message buffer 
+	 * Returns the message that should be dropped next according to the
+	 * eviction policy (see {@link #EVICTION_POLICY_S}); by default the oldest
+	 * (by receive time) message in the message buffer 
 	 * (that is not being sent if excludeMsgBeingSent is true).
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
 	 * being sent from the oldest message check (i.e. if oldest message is
@@ -291,29 +376,16 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getOldestMessage(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-			
-			if (excludeMsgBeingSent && isSending(m.getId())) {
-				continue; // skip the message(s) that router is sending
-			}
-			
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
-			}
-		}
-		
-		return oldest;
+		return this.evictionPolicy.getNextToDrop(this, excludeMsgBeingSent);
 	}
 	
 	/**
 	 * Returns a list of message-connections tuples of the messages whose
 	 * recipient is some host that we're connected to at the moment.
-	 * @return a list of message-connections tuples
+	 * The messages of each connected host are looked up by the recipient,
+	 * so the buffer isn't scanned for every connection.
+	 * @return a list of message-connections tuples (in the order of the
+	 * messages in the buffer and then in the order of the connections)
 	 */
 	protected List<Tuple<Message, Connection>> getMessagesForConnected() {
 		if (getNrofMessages() == 0 || getConnections().size() == 0) {
@@ -323,15 +395,31 @@ public abstract class ActiveRouter extends MessageRouter {
 
 		List<Tuple<Message, Connection>> forTuples = 
 			new ArrayList<Tuple<Message, Connection>>();
-		for (Message m : getMessageCollection()) {
-			for (Connection con : getConnections()) {
-				DTNHost to = con.getOtherNode(getHost());
-				if (m.getTo() == to) {
-					forTuples.add(new Tuple<Message, Connection>(m,con));
-				}
+		int nrofPeers = 0;
+		for (Connection con : getConnections()) {
+			DTNHost to = con.getOtherNode(getHost());
+			List<Message> msgs = getMessagesFor(to);
+			if (msgs.isEmpty()) {
+				continue;
+			}
+			nrofPeers++;
+			for (Message m : msgs) {
+				forTuples.add(new Tuple<Message, Connection>(m,con));
 			}
 		}
 		
+		if (nrofPeers > 1) {
+			/* the list of each peer is in buffer order; merge them (the sort
+			 * is stable, so the connections' order is kept for a message) */
+			Collections.sort(forTuples, 
+					new Comparator<Tuple<Message, Connection>>() {
+				public int compare(Tuple<Message, Connection> t1, 
+						Tuple<Message, Connection> t2) {
+					return compareBufferPositions(t1.getKey(), t2.getKey());
+				}
+			});
+		}
+		
 		return forTuples;
 	}
 	
@@ -531,8 +619,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	/**
 	 * Checks out all sending connections to finalize the ready ones 
-	 * and abort those whose connection went down. Also drops messages
-	 * whose TTL <= 0 (checking every one simulated minute).
+	 * and abort those whose connection went down. Also drops the messages
+	 * that expired while they were being sent.
 	 * @see #addToSendingConnections(Connection)
 	 */
 	@Override
@@ -548,10 +636,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			
 			/* finalize ready transfers */
 			if (con.isMessageTransferred()) {
-				if (con.getMessage() != null) {
-					transferDone(con);
-					con.finalizeTransfer();
-				} /* else: some other entity aborted transfer */
+				finalizeSending(con);
 				removeCurrent = true;
 			}
 			/* remove connections that have gone down */
@@ -564,11 +649,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			} 
 			
 			if (removeCurrent) {
-				// if the message being sent was holding excess buffer, free it
-				if (this.getFreeBufferSize() < 0) {
-					this.makeRoomForMessage(0);
-				}
-				sendingConnections.remove(i);
+				removeSendingConnection(i);
 			}
 			else {
 				/* index increase needed only if nothing was removed */
@@ -576,12 +657,64 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 		}
 		
-		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
-				sendingConnections.size() == 0) {
-			dropExpiredMessages();
-			lastTtlCheck = SimClock.getTime();
+		dropExpiredWhileSending();
+	}
+	
+	/**
+	 * Finalizes the transfer of a sending connection whose transfer has
+	 * completed, removes the connection from the sending connections and
+	 * drops the messages that expired while they were being sent.
+	 * Connections that are not sending or whose transfer is not complete
+	 * yet are left for {@link #update()}.
+	 * @param con The connection whose transfer completed
+	 */
+	@Override
+	public void completeTransfer(Connection con) {
+		int i = this.sendingConnections.indexOf(con);
+		if (i < 0 || !con.isMessageTransferred()) {
+			return;
+		}
+		finalizeSending(con);
+		removeSendingConnection(i);
+		dropExpiredWhileSending();
+	}
+	
+	/**
+	 * Finalizes the transfer of a sending connection whose message has
+	 * been transferred
+	 * @param con The connection
+	 */
+	private void finalizeSending(Connection con) {
+		if (con.getMessage() != null) {
+			transferDone(con);
+			con.finalizeTransfer();
+		} /* else: some other entity aborted transfer */
+	}
+	
+	/**
+	 * Removes a connection from the sending connections
+	 * @param index Index of the connection in the sending connections
+	 */
+	private void removeSendingConnection(int index) {
+		// if the message being sent was holding excess buffer, free it
+		if (this.getFreeBufferSize() < 0) {
+			this.makeRoomForMessage(0);
 		}
+		this.sendingConnections.remove(index);
+	}
+	
+	/**
+	 * Returns true if this router is idle, i.e., it has no connections,
+	 * nothing is being sent and no expired messages are waiting to be
+	 * dropped (see {@link MessageRouter#isIdle()} for the other conditions).
+	 * Without connections the routers have nothing to do in their updates.
+	 * @return True if the router is idle, false if not
+	 */
+	@Override
+	public boolean isIdle() {
+		return this.sendingConnections.isEmpty() &&
+			this.expiredWhileSending.isEmpty() &&
+			getConnections().isEmpty() && super.isIdle();
 	}
 	
 	/**
@@ -594,7 +727,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	/**
 	 * Method is called just before a transfer is finalized 
-	 * at {@link #update()}.
+	 * at {@link #update()} or {@link #completeTransfer(Connection)}.
 	 * Subclasses that are interested of the event may want to override this.
 	 * @param con The connection whose transfer was finalized
 	 */
@@ -192,6 +192,11 @@ public class CircularSpreadRouter extends ActiveRouter {
 	@Override
 	public void update() {
 		super.update();
+		tryNextTransfer();
+	}
+	
+	@Override
+	public void tryNextTransfer() {
 		if (isTransferring() || !canStartTransfer()) {
 			return; // transferring, don't try other connections yet
 		}
@@ -174,6 +174,11 @@ public class CityRouter extends ActiveRouter {
 	@Override
 	public void update() {
 		super.update();
+		tryNextTransfer();
+	}
+	
+	@Override
+	public void tryNextTransfer() {
 		if (!canStartTransfer() ||isTransferring()) {
 			return; // nothing to transfer or is currently transferring 
 		}
@@ -207,7 +212,7 @@ public class CityRouter extends ActiveRouter {
 			
 			for (Message m : getMessageCollection()) {
 			
-				if (othRouter.hasMessage(m.getId())) {
+				if (othRouter.hasMessage(m)) {
 					continue; // skip messages that the other one has
 				}
 				/* Mules should have huge buffer, hence pass those messages whose destination nodes
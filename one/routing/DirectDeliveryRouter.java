@@ -22,6 +22,11 @@ public class DirectDeliveryRouter extends ActiveRouter {
 	@Override
 	public void update() {
 		super.update();
+		tryNextTransfer();
+	}
+	
+	@Override
+	public void tryNextTransfer() {
 		if (isTransferring() || !canStartTransfer()) {
 			return; // can't start a new transfer
 		}
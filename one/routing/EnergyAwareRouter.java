@@ -42,7 +42,11 @@ public class EnergyAwareRouter extends ActiveRouter
 	private double lastUpdate;
 	private double scanInterval;	
 	private ModuleCommunicationBus comBus;
-	private static Random rng = null;
+	
+	static {
+		DTNSim.registerForReset(EnergyAwareRouter.class.getCanonicalName());
+		reset();
+	}
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -85,8 +89,11 @@ public class EnergyAwareRouter extends ActiveRouter
 			this.currentEnergy = range[0];
 		}
 		else {
+			SimContext context = SimContext.getCurrent();
+			Random rng = (Random)context.getState(EnergyAwareRouter.class);
 			if (rng == null) {
 				rng = new Random((int)(range[0] + range[1]));
+				context.setState(EnergyAwareRouter.class, rng);
 			}
 			this.currentEnergy = range[0] + 
 				rng.nextDouble() * (range[1] - range[0]);
@@ -173,7 +180,11 @@ public class EnergyAwareRouter extends ActiveRouter
 	public void update() {
 		super.update();
 		reduceSendingAndScanningEnergy();
-				
+		tryNextTransfer();
+	}
+				
+	@Override
+	public void tryNextTransfer() {
 		if (isTransferring() || !canStartTransfer()) {
 			return; // transferring, don't try other connections yet
 		}
@@ -185,6 +196,16 @@ public class EnergyAwareRouter extends ActiveRouter
 		
 		this.tryAllMessagesToAllConnections();
 	}
+		
+	/**
+	 * Returns false; the energy used for scanning is reduced in every
+	 * update.
+	 * @return false
+	 */
+	@Override
+	public boolean isIdle() {
+		return false;
+	}
 		
 	@Override
 	public EnergyAwareRouter replicate() {
@@ -204,5 +225,12 @@ public class EnergyAwareRouter extends ActiveRouter
 	@Override
 	public String toString() {
 		return super.toString() + " energy level = " + this.currentEnergy;
-	}	
+	}
+	
+	/**
+	 * Resets the energy level rng of the current simulation context
+	 */
+	public static void reset() {
+		SimContext.getCurrent().setState(EnergyAwareRouter.class, null);
+	}
 }
\ No newline at end of file
@@ -19,8 +19,8 @@ import core.*;
  */
 public class EpidemicOracleRouter extends ActiveRouter {
 	
-	/** List of all routers in this node group */
-	private static List<EpidemicOracleRouter> allRouters;
+	/** List of all routers in this node group (shared by the routers) */
+	private List<EpidemicOracleRouter> allRouters;
 
 	static {
 		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
@@ -42,8 +42,26 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	protected EpidemicOracleRouter(EpidemicOracleRouter r) {
 		super(r);
+		this.allRouters = getAllRouters();
 		allRouters.add(this);
 	}
+	
+	/**
+	 * Returns the list of all routers of the current simulation context
+	 * @return The list of all routers
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<EpidemicOracleRouter> getAllRouters() {
+		SimContext context = SimContext.getCurrent();
+		List<EpidemicOracleRouter> routers = 
+			(List<EpidemicOracleRouter>)context.getState(
+					EpidemicOracleRouter.class);
+		if (routers == null) {
+			routers = new ArrayList<EpidemicOracleRouter>();
+			context.setState(EpidemicOracleRouter.class, routers);
+		}
+		return routers;
+	}
 	
 	@Override
 	public void changedConnection(Connection con) {
@@ -52,7 +70,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 			List<Message> newMessages = new ArrayList<Message>();
 			
 			for (Message m : peer.getMessageCollection()) {
-				if (!this.hasMessage(m.getId())) {
+				if (!this.hasMessage(m)) {
 					newMessages.add(m);
 				}
 			}
@@ -123,7 +141,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	}
 	
 	protected int checkReceiving(Message m) {
-		if ( isIncomingMessage(m.getId()) || hasMessage(m.getId()) || 
+		if ( isIncomingMessage(m.getId()) || hasMessage(m) || 
 				isDeliveredMessage(m) ){
 			return DENIED_OLD; // already seen this message -> reject it
 		}
@@ -170,10 +188,10 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	}
 	
 	/**
-	 * Resets the static router list
+	 * Resets the router list of the current simulation context
 	 */
 	public static void reset() {
-		allRouters = new ArrayList<EpidemicOracleRouter>();
+		SimContext.getCurrent().setState(EpidemicOracleRouter.class, null);
 	}
 
 }
\ No newline at end of file
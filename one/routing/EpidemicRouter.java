@@ -4,6 +4,11 @@
  */
 package routing;
 
+import java.util.HashMap;
+
+import core.Connection;
+import core.DTNHost;
+import core.Message;
 import core.Settings;
 
 /**
@@ -11,6 +16,23 @@ import core.Settings;
  * connections at a time.
  */
 public class EpidemicRouter extends ActiveRouter {
+	/** Epidemic router's setting namespace ({@value})*/
+	public static final String EPIDEMIC_NS = "EpidemicRouter";
+	/**
+	 * Summary vector exchange -setting id ({@value}). Boolean. If true, the
+	 * routers exchange summary vectors (the IDs of the messages they have
+	 * or have received) when a connection comes up, and only the messages
+	 * the peer didn't have are offered to it during the connection.
+	 * Messages the peer gets or drops later are not seen in the summary
+	 * vector. Default is false: all messages are offered and the peer
+	 * rejects the ones it has.
+	 */
+	public static final String SUMMARY_VECTOR_S = "summaryVector";
+	
+	/** is the summary vector exchange in use */
+	private boolean useSummaryVectors;
+	/** summary vectors of the connected peers (by connection) */
+	private HashMap<Connection, MessageIdSet> summaryVectors;
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -19,7 +41,9 @@ public class EpidemicRouter extends ActiveRouter {
 	 */
 	public EpidemicRouter(Settings s) {
 		super(s);
-		//TODO: read&use epidemic router specific settings (if any)
+		Settings epidemicSettings = new Settings(EPIDEMIC_NS);
+		this.useSummaryVectors = epidemicSettings.contains(SUMMARY_VECTOR_S)
+				&& epidemicSettings.getBoolean(SUMMARY_VECTOR_S);
 	}
 	
 	/**
@@ -28,12 +52,56 @@ public class EpidemicRouter extends ActiveRouter {
 	 */
 	protected EpidemicRouter(EpidemicRouter r) {
 		super(r);
-		//TODO: copy epidemic settings here (if any)
+		this.useSummaryVectors = r.useSummaryVectors;
+		this.summaryVectors = new HashMap<Connection, MessageIdSet>();
+	}
+	
+	@Override
+	public void changedConnection(Connection con) {
+		if (!this.useSummaryVectors) {
+			return;
+		}
+		
+		if (con.isUp()) {
+			DTNHost peer = con.getOtherNode(getHost());
+			this.summaryVectors.put(con, peer.getRouter().getSummaryVector());
+		}
+		else {
+			this.summaryVectors.remove(con);
+		}
+	}
+	
+	/**
+	 * Starts a transfer unless the peer's summary vector shows that it
+	 * already has the message. Messages to the peer itself are always
+	 * offered so that delivered messages can be deleted as usual.
+	 */
+	@Override
+	protected int startTransfer(Message m, Connection con) {
+		MessageIdSet summary = null;
+		if (this.useSummaryVectors) {
+			summary = this.summaryVectors.get(con);
+			if (summary != null && summary.contains(m.getIdIndex()) &&
+					m.getTo() != con.getOtherNode(getHost())) {
+				return DENIED_OLD; // peer has the message, don't offer it
+			}
+		}
+		
+		int retVal = super.startTransfer(m, con);
+		if (summary != null && (retVal == RCV_OK || retVal == DENIED_OLD)) {
+			summary.add(m.getIdIndex()); // peer has it now
+		}
+		return retVal;
 	}
 			
 	@Override
 	public void update() {
 		super.update();
+		tryNextTransfer();
+	}
+	
+	@Override
+	public void tryNextTransfer() {
 		if (isTransferring() || !canStartTransfer()) {
 			return; // transferring, don't try other connections yet
 		}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+
+import core.Message;
+import core.SettingsError;
+
+/**
+ * Order in which an {@link ActiveRouter} drops messages from its buffer
+ * when it needs room for new ones. The buffered messages are kept in an
+ * ordered index, so the next message to drop is found in logarithmic time.
+ * The order must depend only on values that don't change while the message
+ * is in the buffer. Messages that are equal in the order are dropped in
+ * the order they were added to the buffer.
+ */
+public class EvictionPolicy {
+	/** Policy name for dropping the message that was added to the buffer
+	 * first ({@value}) */
+	public static final String FIFO = "fifo";
+	/** Policy name for dropping the message with the oldest receive time
+	 * ({@value}). This is the default policy. */
+	public static final String OLDEST_RECEIVED = "oldestReceived";
+	/** Policy name for dropping the largest message first ({@value}) */
+	public static final String LARGEST_FIRST = "largestFirst";
+	/** Policy name for dropping the message whose TTL ends first
+	 * ({@value}) */
+	public static final String TTL_NEAREST = "ttlNearest";
+
+	/** order of the messages (first is dropped first) */
+	private Comparator<Message> order;
+	/** the buffered messages in the drop order */
+	private TreeSet<Entry> index;
+	/** index entries of the buffered messages by message ID index */
+	private MessageIdMap<Entry> entries;
+	/** sequence number for the next added message */
+	private long nextSeqNo;
+
+	/**
+	 * Creates a new eviction policy
+	 * @param order Order of the messages; the first message is dropped first
+	 */
+	public EvictionPolicy(Comparator<Message> order) {
+		this.order = order;
+		this.index = new TreeSet<Entry>();
+		this.entries = new MessageIdMap<Entry>();
+		this.nextSeqNo = 0;
+	}
+
+	/**
+	 * Creates an eviction policy by its name
+	 * @param name Name of the policy (e.g. {@link #OLDEST_RECEIVED})
+	 * @return The policy
+	 * @throws SettingsError if the name is not a valid policy
+	 */
+	public static EvictionPolicy create(String name) {
+		Comparator<Message> order;
+
+		if (name.equals(FIFO)) {
+			order = new Comparator<Message>() {
+				public int compare(Message m1, Message m2) {
+					return 0; // insertion order
+				}
+			};
+		}
+		else if (name.equals(OLDEST_RECEIVED)) {
+			order = new Comparator<Message>() {
+				public int compare(Message m1, Message m2) {
+					return Double.compare(m1.getReceiveTime(),
+							m2.getReceiveTime());
+				}
+			};
+		}
+		else if (name.equals(LARGEST_FIRST)) {
+			order = new Comparator<Message>() {
+				public int compare(Message m1, Message m2) {
+					return m2.getSize() - m1.getSize();
+				}
+			};
+		}
+		else if (name.equals(TTL_NEAREST)) {
+			order = new Comparator<Message>() {
+				public int compare(Message m1, Message m2) {
+					return Double.compare(m1.getExpiryTime(),
+							m2.getExpiryTime());
+				}
+			};
+		}
+		else {
+			throw new SettingsError("Unknown eviction policy '" + name + "'");
+		}
+
+		return new EvictionPolicy(order);
+	}
+
+	/**
+	 * Adds a message to the index
+	 * @param m The message that was added to the buffer
+	 */
+	public void messageAdded(Message m) {
+		messageRemoved(m); // replaces any message with the same ID
+		Entry e = new Entry(m, this.nextSeqNo++);
+		this.entries.put(m.getIdIndex(), e);
+		this.index.add(e);
+	}
+
+	/**
+	 * Removes a message from the index
+	 * @param m The message that was removed from the buffer
+	 */
+	public void messageRemoved(Message m) {
+		Entry e = this.entries.remove(m.getIdIndex());
+		if (e != null) {
+			this.index.remove(e);
+		}
+	}
+
+	/**
+	 * Returns the message that should be dropped next
+	 * @param router The router whose buffer is in question
+	 * @param excludeMsgBeingSent If true, messages that the router is
+	 * sending are skipped
+	 * @return The message to drop or null if there are no (suitable)
+	 * messages
+	 */
+	public Message getNextToDrop(ActiveRouter router,
+			boolean excludeMsgBeingSent) {
+		for (Entry e : this.index) {
+			if (excludeMsgBeingSent && router.isSending(e.msg.getId())) {
+				continue; // skip the message(s) that router is sending
+			}
+			return e.msg;
+		}
+		return null;
+	}
+
+	/**
+	 * Entry of the message index
+	 */
+	private class Entry implements Comparable<Entry> {
+		private Message msg;
+		private long seqNo;
+
+		public Entry(Message msg, long seqNo) {
+			this.msg = msg;
+			this.seqNo = seqNo;
+		}
+
+		public int compareTo(Entry other) {
+			int c = order.compare(this.msg, other.msg);
+			if (c != 0) {
+				return c;
+			}
+			return this.seqNo < other.seqNo ? -1 :
+				(this.seqNo == other.seqNo ? 0 : 1);
+		}
+	}
+}
@@ -37,7 +37,7 @@ public class FirstContactRouter extends ActiveRouter {
 		
 		if (recvCheck == RCV_OK) {
 			/* don't accept a message that has already traversed this node */
-			if (m.getHops().contains(getHost())) {
+			if (m.hasPassed(getHost())) {
 				recvCheck = DENIED_OLD;
 			}
 		}
@@ -48,6 +48,11 @@ public class FirstContactRouter extends ActiveRouter {
 	@Override
 	public void update() {
 		super.update();
+		tryNextTransfer();
+	}
+	
+	@Override
+	public void tryNextTransfer() {
 		if (isTransferring() || !canStartTransfer()) {
 			return; 
 		}
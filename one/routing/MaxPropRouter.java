@@ -8,7 +8,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +15,7 @@ import java.util.Set;
 
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
+import routing.maxprop.MeetingProbabilityTable;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -43,17 +43,17 @@ public class MaxPropRouter extends ActiveRouter {
 	public static final String PROB_SET_MAX_SIZE_S = "probSetMaxSize";
     /** Default value for the meeting probability set maximum size ({@value}).*/
     public static final int DEFAULT_PROB_SET_MAX_SIZE = 50;
-    private static int probSetMaxSize;
+    private int probSetMaxSize;
 
 	/** probabilities of meeting hosts */
 	private MeetingProbabilitySet probs;
 	/** meeting probabilities of all hosts from this host's point of view 
 	 * mapped using host's network address */
-	private Map<Integer, MeetingProbabilitySet> allProbs;
+	private MeetingProbabilityTable allProbs;
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
+	private MessageIdSet ackedMessageIds;
 	/** mapping of the current costs for all messages. This should be set to
 	 * null always when the costs should be updated (a host is met or a new
 	 * message is received) */
@@ -108,10 +108,11 @@ public class MaxPropRouter extends ActiveRouter {
 	protected MaxPropRouter(MaxPropRouter r) {
 		super(r);
 		this.alpha = r.alpha;
+		this.probSetMaxSize = r.probSetMaxSize;
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
-		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
-		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.allProbs = new MeetingProbabilityTable();
+		this.dijkstra = new MaxPropDijkstra(this.allProbs.getSets());
+		this.ackedMessageIds = new MessageIdSet();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 	}	
 
@@ -132,6 +133,8 @@ public class MaxPropRouter extends ActiveRouter {
 				MaxPropRouter otherRouter = (MaxPropRouter)mRouter;
 				
 				/* exchange ACKed message data */
+				forgetExpiredIds(this.ackedMessageIds);
+				otherRouter.forgetExpiredIds(otherRouter.ackedMessageIds);
 				this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
 				otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
 				deleteAckedMessages();
@@ -142,12 +145,14 @@ public class MaxPropRouter extends ActiveRouter {
 				otherRouter.probs.updateMeetingProbFor(getHost().getAddress());
 				
 				/* exchange the transitive probabilities */
-				this.updateTransitiveProbs(otherRouter.allProbs);
-				otherRouter.updateTransitiveProbs(this.allProbs);
+				this.allProbs.updateFrom(otherRouter.allProbs,
+						getHost().getAddress(), otherHost.getAddress());
+				otherRouter.allProbs.updateFrom(this.allProbs,
+						otherHost.getAddress(), getHost().getAddress());
 				this.allProbs.put(otherHost.getAddress(),
-						otherRouter.probs.replicate());
+						otherRouter.probs.snapshot());
 				otherRouter.allProbs.put(getHost().getAddress(),
-						this.probs.replicate());
+						this.probs.snapshot());
 			}
 		}
 		else {
@@ -155,32 +160,21 @@ public class MaxPropRouter extends ActiveRouter {
 			updateTransferredBytesAvg(con.getTotalBytesTransferred());
 		}
 	}
-
-	/**
-	 * Updates transitive probability values by replacing the current 
-	 * MeetingProbabilitySets with the values from the given mapping
-	 * if the given sets have more recent updates.
-	 * @param p Mapping of the values of the other host
-	 */
-	private void updateTransitiveProbs(Map<Integer, MeetingProbabilitySet> p) {
-		for (Map.Entry<Integer, MeetingProbabilitySet> e : p.entrySet()) {
-			MeetingProbabilitySet myMps = this.allProbs.get(e.getKey()); 
-			if (myMps == null || 
-				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
-				this.allProbs.put(e.getKey(), e.getValue().replicate());
-			}
-		}
-	}
 	
 	/**
 	 * Deletes the messages from the message buffer that are known to be ACKed
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		List<Message> acked = new ArrayList<Message>();
+		for (Message m : getMessageCollection()) {
+			if (this.ackedMessageIds.contains(m.getIdIndex()) &&
+					!isSending(m.getId())) {
+				acked.add(m);
 			}
 		}
+		for (Message m : acked) {
+			this.deleteMessage(m.getId(), false);
+		}
 	}
 	
 	@Override
@@ -189,7 +183,7 @@ public class MaxPropRouter extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessageIds.add(m.getIdIndex());
 		}
 		return m;
 	}
@@ -205,7 +199,7 @@ public class MaxPropRouter extends ActiveRouter {
 		Message m = con.getMessage();
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == con.getOtherNode(getHost())) { 
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			this.ackedMessageIds.add(m.getIdIndex()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 	}
@@ -270,6 +264,11 @@ public class MaxPropRouter extends ActiveRouter {
 	@Override
 	public void update() {
 		super.update();
+		tryNextTransfer();
+	}
+	
+	@Override
+	public void tryNextTransfer() {
 		if (!canStartTransfer() ||isTransferring()) {
 			return; // nothing to transfer or is currently transferring 
 		}
@@ -343,8 +342,8 @@ public class MaxPropRouter extends ActiveRouter {
 			for (Message m : msgCollection) {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+				if (othRouter.hasMessage(m) ||
+						m.hasPassed(other)) {
 					continue; 
 				}
 				messages.add(new Tuple<Message, Connection>(m,con));
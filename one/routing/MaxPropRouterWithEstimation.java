@@ -16,6 +16,7 @@ import java.util.Set;
 
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
+import routing.maxprop.MeetingProbabilityTable;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -47,11 +48,11 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	private MeetingProbabilitySet probs;
 	/** meeting probabilities of all hosts from this host's point of view 
 	 * mapped using host's network address */
-	private Map<Integer, MeetingProbabilitySet> allProbs;
+	private MeetingProbabilityTable allProbs;
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
+	private MessageIdSet ackedMessageIds;
 	/** mapping of the current costs for all messages. This should be set to
 	 * null always when the costs should be updated (a host is met or a new
 	 * message is received) */
@@ -119,9 +120,9 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		this.timescale = r.timescale;
 		this.probs = new MeetingProbabilitySet(
 				MeetingProbabilitySet.INFINITE_SET_SIZE, this.alpha);
-		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
-		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.allProbs = new MeetingProbabilityTable();
+		this.dijkstra = new MaxPropDijkstra(this.allProbs.getSets());
+		this.ackedMessageIds = new MessageIdSet();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 		initMeetings();
 	}	
@@ -164,6 +165,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				}
 				
 				/* exchange ACKed message data */
+				forgetExpiredIds(this.ackedMessageIds);
+				otherRouter.forgetExpiredIds(otherRouter.ackedMessageIds);
 				this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
 				otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
 				deleteAckedMessages();
@@ -174,12 +177,14 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				otherRouter.probs.updateMeetingProbFor(getHost().getAddress());
 				
 				/* exchange the transitive probabilities */
-				this.updateTransitiveProbs(otherRouter.allProbs);
-				otherRouter.updateTransitiveProbs(this.allProbs);
+				this.allProbs.updateFrom(otherRouter.allProbs,
+						getHost().getAddress(), otherHost.getAddress());
+				otherRouter.allProbs.updateFrom(this.allProbs,
+						otherHost.getAddress(), getHost().getAddress());
 				this.allProbs.put(otherHost.getAddress(),
-						otherRouter.probs.replicate());
+						otherRouter.probs.snapshot());
 				otherRouter.allProbs.put(getHost().getAddress(),
-						this.probs.replicate());
+						this.probs.snapshot());
 			}
 		}
 		else {
@@ -187,22 +192,6 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 			updateTransferredBytesAvg(con.getTotalBytesTransferred());
 		}
 	}
-
-	/**
-	 * Updates transitive probability values by replacing the current 
-	 * MeetingProbabilitySets with the values from the given mapping
-	 * if the given sets have more recent updates.
-	 * @param p Mapping of the values of the other host
-	 */
-	private void updateTransitiveProbs(Map<Integer, MeetingProbabilitySet> p) {
-		for (Map.Entry<Integer, MeetingProbabilitySet> e : p.entrySet()) {
-			MeetingProbabilitySet myMps = this.allProbs.get(e.getKey()); 
-			if (myMps == null || 
-				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
-				this.allProbs.put(e.getKey(), e.getValue().replicate());
-			}
-		}
-	}
 	
 	/**
 	 * Updates the MaxPROP estimators
@@ -320,11 +309,16 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 * Deletes the messages from the message buffer that are known to be ACKed
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		List<Message> acked = new ArrayList<Message>();
+		for (Message m : getMessageCollection()) {
+			if (this.ackedMessageIds.contains(m.getIdIndex()) &&
+					!isSending(m.getId())) {
+				acked.add(m);
 			}
 		}
+		for (Message m : acked) {
+			this.deleteMessage(m.getId(), false);
+		}
 	}
 	
 	@Override
@@ -333,7 +327,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessageIds.add(m.getIdIndex());
 		}
 		return m;
 	}
@@ -349,7 +343,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		Message m = con.getMessage();
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == con.getOtherNode(getHost())) { 
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			this.ackedMessageIds.add(m.getIdIndex()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 	}
@@ -413,6 +407,11 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	@Override
 	public void update() {
 		super.update();
+		tryNextTransfer();
+	}
+	
+	@Override
+	public void tryNextTransfer() {
 		if (!canStartTransfer() ||isTransferring()) {
 			return; // nothing to transfer or is currently transferring 
 		}
@@ -486,8 +485,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 			for (Message m : msgCollection) {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+				if (othRouter.hasMessage(m) ||
+						m.hasPassed(other)) {
 					continue; 
 				}
 				messages.add(new Tuple<Message, Connection>(m,con));
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import core.Message;
+
+/**
+ * Map keyed by message ID indexes (see {@link Message#getIdIndex()}). The
+ * keys are primitive ints in an open addressing hash table, so lookups
+ * don't hash strings or box integers. The values are iterated in the
+ * order they were added to the map; replacing a value keeps its place.
+ * @param <V> Type of the values
+ */
+public class MessageIdMap<V> {
+	/** initial number of entries */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** hash table of entry numbers + 1 (0 for a free slot) */
+	private int[] table;
+	/** ID indexes of the entries (in the order they were added) */
+	private int[] keys;
+	/** values of the entries (null for removed entries) */
+	private V[] values;
+	/** number of entries in use, including the removed ones */
+	private int used;
+	/** number of values in the map */
+	private int size;
+	/** modification count for detecting modifications during iteration */
+	private int modCount;
+	/** view of the values */
+	private Collection<V> valuesView;
+
+	/**
+	 * Creates an empty map
+	 */
+	@SuppressWarnings("unchecked")
+	public MessageIdMap() {
+		this.keys = new int[INITIAL_CAPACITY];
+		this.values = (V[])new Object[INITIAL_CAPACITY];
+		this.table = new int[INITIAL_CAPACITY * 2];
+		this.used = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the value of the given ID index
+	 * @param idIndex ID index of the message
+	 * @return The value or null if there is no such key in the map
+	 */
+	public V get(int idIndex) {
+		int entry = this.table[slotOf(idIndex)];
+		return entry == 0 ? null : this.values[entry - 1];
+	}
+
+	/**
+	 * Returns true if the map has a value for the given ID index
+	 * @param idIndex ID index of the message
+	 * @return True if the map has such key, false if not
+	 */
+	public boolean containsKey(int idIndex) {
+		return this.table[slotOf(idIndex)] != 0;
+	}
+
+	/**
+	 * Puts a value to the map. A value with the same key is replaced.
+	 * @param idIndex ID index of the message
+	 * @param value The value (not null)
+	 * @return The replaced value or null if there was no value with the
+	 * same key
+	 */
+	public V put(int idIndex, V value) {
+		int slot = slotOf(idIndex);
+		int entry = this.table[slot];
+		if (entry != 0) {
+			V old = this.values[entry - 1];
+			this.values[entry - 1] = value;
+			return old;
+		}
+
+		if (this.used == this.values.length) {
+			makeRoom();
+			slot = slotOf(idIndex);
+		}
+		this.keys[this.used] = idIndex;
+		this.values[this.used] = value;
+		this.used++;
+		this.table[slot] = this.used;
+		this.size++;
+		this.modCount++;
+		return null;
+	}
+
+	/**
+	 * Removes a value from the map
+	 * @param idIndex ID index of the message
+	 * @return The removed value or null if there was no such key
+	 */
+	public V remove(int idIndex) {
+		int slot = slotOf(idIndex);
+		int entry = this.table[slot];
+		if (entry == 0) {
+			return null;
+		}
+
+		V value = this.values[entry - 1];
+		this.values[entry - 1] = null;
+		deleteSlot(slot);
+		this.size--;
+		this.modCount++;
+		if (this.size == 0) {
+			this.used = 0; // no live entries; start from the beginning
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the position of a key in the order the values are iterated.
+	 * Positions of the later values are greater, but there can be gaps
+	 * between them and the positions change when values are added or
+	 * removed.
+	 * @param idIndex ID index of the message
+	 * @return The position or -1 if there is no such key in the map
+	 */
+	public int indexOf(int idIndex) {
+		return this.table[slotOf(idIndex)] - 1;
+	}
+
+	/**
+	 * Returns the number of values in the map
+	 * @return The number of values
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns a view of the values in the map. The view can't be used for
+	 * modifying the map and it must not be iterated while the map is
+	 * modified.
+	 * @return The values in the order they were added
+	 */
+	public Collection<V> values() {
+		if (this.valuesView == null) {
+			this.valuesView = new AbstractCollection<V>() {
+				public Iterator<V> iterator() {
+					return new ValueIterator();
+				}
+
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return this.valuesView;
+	}
+
+	/**
+	 * Returns the hash table slot that has the given key or the free slot
+	 * where the key would be put
+	 * @param key The key
+	 * @return Index of the slot
+	 */
+	private int slotOf(int key) {
+		int mask = this.table.length - 1;
+		int slot = hash(key) & mask;
+		int entry;
+		while ((entry = this.table[slot]) != 0) {
+			if (this.keys[entry - 1] == key) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Frees a hash table slot and moves the following entries of the same
+	 * probe sequence back so that they can still be found
+	 * @param slot Index of the slot to free
+	 */
+	private void deleteSlot(int slot) {
+		int mask = this.table.length - 1;
+		int free = slot;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			int entry = this.table[next];
+			if (entry == 0) {
+				break;
+			}
+			int home = hash(this.keys[entry - 1]) & mask;
+			boolean reachable = free <= next ?
+					(free < home && home <= next) :
+					(free < home || home <= next);
+			if (!reachable) {
+				this.table[free] = entry;
+				free = next;
+			}
+		}
+		this.table[free] = 0;
+	}
+
+	/**
+	 * Makes room for a new entry by dropping the removed entries or, if
+	 * there are only few of them, by growing the arrays
+	 */
+	private void makeRoom() {
+		if (this.size > this.used / 2) {
+			int capacity = this.values.length * 2;
+			this.keys = Arrays.copyOf(this.keys, capacity);
+			this.values = Arrays.copyOf(this.values, capacity);
+			this.table = new int[capacity * 2];
+		}
+		else {
+			Arrays.fill(this.table, 0);
+		}
+
+		int live = 0;
+		for (int i=0; i<this.used; i++) {
+			if (this.values[i] != null) {
+				this.keys[live] = this.keys[i];
+				this.values[live] = this.values[i];
+				live++;
+			}
+		}
+		Arrays.fill(this.values, live, this.used, null);
+		this.used = live;
+
+		int mask = this.table.length - 1;
+		for (int i=0; i<live; i++) {
+			int slot = hash(this.keys[i]) & mask;
+			while (this.table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			this.table[slot] = i + 1;
+		}
+	}
+
+	/**
+	 * Spreads the bits of a key for the hash table
+	 * @param key The key
+	 * @return The hash value
+	 */
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Iterator over the values in the order they were added
+	 */
+	private class ValueIterator implements Iterator<V> {
+		private int next;
+		private int expectedModCount;
+
+		private ValueIterator() {
+			this.expectedModCount = modCount;
+			this.next = 0;
+			skipRemoved();
+		}
+
+		private void skipRemoved() {
+			while (this.next < used && values[this.next] == null) {
+				this.next++;
+			}
+		}
+
+		public boolean hasNext() {
+			return this.next < used;
+		}
+
+		public V next() {
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (this.next >= used) {
+				throw new NoSuchElementException();
+			}
+			V value = values[this.next++];
+			skipRemoved();
+			return value;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
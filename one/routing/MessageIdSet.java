@@ -0,0 +1,234 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.Arrays;
+
+import core.Message;
+
+/**
+ * Compact set of message IDs, such as the IDs of delivered or acknowledged
+ * messages. The IDs are stored as bits by their ID index
+ * (see {@link Message#getIdIndex()}), so a message takes one bit instead of
+ * a reference to the message or its ID string. Membership checks have no
+ * false positives.
+ * <P>
+ * The indexes are given in the order the messages are created, so the IDs
+ * of old messages are at the start of the bitset. The bitset starts at the
+ * first ID added to the set and grows downwards if an older ID is added
+ * later, so a set doesn't cover the messages created before it got its
+ * first ID. When the messages' TTL has ended, their part of the bitset can
+ * be dropped with {@link #forgetExpired(double)}; this keeps the set's size
+ * bounded by the number of messages that are alive at the same time.
+ * </P>
+ */
+public class MessageIdSet {
+	/** initial number of words of the bitset */
+	private static final int INITIAL_WORDS = 4;
+	/** bitset of an empty set */
+	private static final long[] NO_WORDS = new long[0];
+
+	/** bits of the IDs; bit i of word k is ID index (firstWord + k)*64 + i */
+	private long[] words;
+	/** number of the first word in the words array */
+	private int firstWord;
+	/** smallest ID index whose TTL has not been checked to be over; the
+	 * IDs below it are forgotten */
+	private int expiryCursor;
+	/** number of IDs in the set */
+	private int size;
+
+	/**
+	 * Creates an empty set
+	 */
+	public MessageIdSet() {
+		this.words = NO_WORDS;
+		this.firstWord = 0;
+		this.expiryCursor = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Creates a copy of a set. The copy starts where the other set starts,
+	 * so IDs the other set has forgotten are forgotten in the copy too.
+	 * @param other The set to copy
+	 */
+	public MessageIdSet(MessageIdSet other) {
+		this.words = Arrays.copyOf(other.words, other.words.length);
+		this.firstWord = other.firstWord;
+		this.expiryCursor = other.expiryCursor;
+		this.size = other.size;
+	}
+
+	/**
+	 * Adds an ID to the set. IDs that have already been forgotten
+	 * (see {@link #forgetExpired(double)}) are not added.
+	 * @param idIndex Index of the message ID
+	 * @return True if the ID was added, false if it was in the set already
+	 * or was forgotten
+	 */
+	public boolean add(int idIndex) {
+		if (idIndex < this.expiryCursor) {
+			return false;
+		}
+		cover(idIndex >> 6, (idIndex >> 6) + 1);
+		int word = (idIndex >> 6) - this.firstWord;
+		long bit = 1L << idIndex;
+		if ((this.words[word] & bit) != 0) {
+			return false;
+		}
+		this.words[word] |= bit;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Makes the bitset cover the given words. The bitset grows to at least
+	 * double its size, upwards or downwards, but not below the word of the
+	 * forgotten IDs.
+	 * @param from The first word to cover
+	 * @param to The word after the last word to cover
+	 */
+	private void cover(int from, int to) {
+		if (this.words.length == 0) {
+			this.words = new long[Math.max(to - from, INITIAL_WORDS)];
+			this.firstWord = from;
+			return;
+		}
+		int end = this.firstWord + this.words.length;
+		if (from >= this.firstWord && to <= end) {
+			return;
+		}
+
+		int newFirst = this.firstWord;
+		int newEnd = end;
+		if (from < this.firstWord) {
+			newFirst = Math.max(Math.min(from,
+					this.firstWord - this.words.length),
+					this.expiryCursor >> 6);
+		}
+		if (to > end) {
+			newEnd = Math.max(to, end + this.words.length);
+		}
+		long[] newWords = new long[newEnd - newFirst];
+		System.arraycopy(this.words, 0, newWords,
+				this.firstWord - newFirst, this.words.length);
+		this.words = newWords;
+		this.firstWord = newFirst;
+	}
+
+	/**
+	 * Returns true if the set has the given ID
+	 * @param idIndex Index of the message ID
+	 * @return True if the ID is in the set, false if not
+	 */
+	public boolean contains(int idIndex) {
+		int word = (idIndex >> 6) - this.firstWord;
+		if (word < 0 || word >= this.words.length) {
+			return false;
+		}
+		return (this.words[word] & (1L << idIndex)) != 0;
+	}
+
+	/**
+	 * Adds all IDs of another set to this set. The IDs this set has
+	 * forgotten are not added, and only the words of the other set from
+	 * its first to its last ID are merged, so the work depends on the
+	 * number of live messages, not on all the messages ever added.
+	 * @param other The other set
+	 * @return True if any new IDs were added, false if not
+	 */
+	public boolean addAll(MessageIdSet other) {
+		int cursorWord = this.expiryCursor >> 6;
+		int from = Math.max(other.firstWord, cursorWord);
+		int to = other.firstWord + other.words.length;
+		while (from < to && other.words[from - other.firstWord] == 0) {
+			from++;
+		}
+		while (to > from && other.words[to - 1 - other.firstWord] == 0) {
+			to--;
+		}
+		if (from == to) {
+			return false;
+		}
+		cover(from, to);
+
+		boolean changed = false;
+		for (int w = from; w < to; w++) {
+			long bits = other.words[w - other.firstWord];
+			if (w == cursorWord) {
+				bits &= -1L << this.expiryCursor; // forgotten IDs
+			}
+			long mine = this.words[w - this.firstWord];
+			long added = bits & ~mine;
+			if (added != 0) {
+				this.words[w - this.firstWord] = mine | added;
+				this.size += Long.bitCount(added);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Forgets the IDs of messages whose TTL ended before the given time.
+	 * Only whole words at the start of the set are dropped, and only as far
+	 * as all the older messages have expired too, so some expired IDs may
+	 * still be found in the set.
+	 * @param time The time limit
+	 * @see Message#skipExpiredIdIndexes(int, double)
+	 */
+	public void forgetExpired(double time) {
+		this.expiryCursor = Message.skipExpiredIdIndexes(this.expiryCursor,
+				time);
+
+		int drop = (this.expiryCursor >> 6) - this.firstWord;
+		if (drop <= 0) {
+			return;
+		}
+		if (drop >= this.words.length) {
+			/* all dropped; the next ID added starts the bitset again */
+			this.words = NO_WORDS;
+			this.size = 0;
+			return;
+		}
+		for (int i=0; i<drop; i++) {
+			this.size -= Long.bitCount(this.words[i]);
+		}
+		System.arraycopy(this.words, drop, this.words, 0,
+				this.words.length - drop);
+		Arrays.fill(this.words, this.words.length - drop,
+				this.words.length, 0);
+		this.firstWord += drop;
+	}
+
+	/**
+	 * Returns the next ID index in the set
+	 * @param from The index to start searching from
+	 * @return The smallest ID index in the set that is at least
+	 * <CODE>from</CODE> or -1 if there is no such index
+	 */
+	public int nextIdIndex(int from) {
+		int word = Math.max((from >> 6) - this.firstWord, 0);
+		long mask = (from >> 6) - this.firstWord == word ? -1L << from : -1L;
+		for (; word < this.words.length; word++) {
+			long bits = this.words[word] & mask;
+			if (bits != 0) {
+				return ((this.firstWord + word) << 6) +
+					Long.numberOfTrailingZeros(bits);
+			}
+			mask = -1L;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of IDs in the set
+	 * @return The number of IDs
+	 */
+	public int size() {
+		return this.size;
+	}
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import core.Message;
+
+/**
+ * Map of messages keyed by their ID index (see {@link Message#getIdIndex()}).
+ * The messages are iterated in the order they were added to the map;
+ * replacing a message keeps its place.
+ */
+public class MessageMap extends MessageIdMap<Message> {
+
+	/**
+	 * Puts a message to the map. A message with the same ID is replaced.
+	 * @param m The message
+	 * @return The replaced message or null if there was no message with the
+	 * same ID
+	 */
+	public Message put(Message m) {
+		return put(m.getIdIndex(), m);
+	}
+}
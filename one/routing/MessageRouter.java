@@ -4,6 +4,7 @@
  */
 package routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -46,6 +47,17 @@ public abstract class MessageRouter {
 	 * </UL>
 	 */ 
 	public static final String SEND_QUEUE_MODE_S = "sendQueue";
+	/**
+	 * Message ID retention -setting id ({@value}). How long (seconds) the
+	 * IDs of the messages delivered to this host are remembered after the
+	 * messages' TTL has ended. Routers that keep other ID sets (e.g., the
+	 * ACKed messages of MaxProp) use the same retention. Messages whose
+	 * ID has been forgotten are accepted as new if they are received again.
+	 * Value -1 means that the IDs are never forgotten. Default value is
+	 * the message TTL ({@link #MSG_TTL_S}) in seconds, or -1 if the TTL is
+	 * infinite.
+	 */
+	public static final String ID_RETENTION_S = "idRetention";
 	
 	/** Setting value for random queue mode */
 	public static final int Q_MODE_RANDOM = 1;
@@ -66,20 +78,31 @@ public abstract class MessageRouter {
 	public static final int DENIED_UNSPECIFIED = -999;
 	
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
+	/** The messages being transferred to this router */
+	private ArrayList<Message> incomingMessages;
+	/** The hosts the incoming messages are from (same order as the
+	 * messages) */
+	private ArrayList<DTNHost> incomingFrom;
 	/** The messages this router is carrying */
-	private HashMap<String, Message> messages; 
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
+	private MessageMap messages; 
+	/** The messages this router is carrying by their final recipient
+	 * (same order as in the buffer) */
+	private HashMap<DTNHost, RecipientMessages> messagesByTo;
+	/** IDs of the messages this router has received as the final
+	 * recipient */
+	private MessageIdSet deliveredIds;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
 	private int bufferSize;
+	/** total size of the messages in the buffer */
+	private int bufferOccupancy;
 	/** TTL for all messages */
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** how long the IDs of expired messages are remembered (-1 = forever) */
+	private double idRetention;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>>	applications = null;
@@ -111,6 +134,15 @@ public abstract class MessageRouter {
 		else {
 			sendQueueMode = Q_MODE_RANDOM;
 		}
+		if (s.contains(ID_RETENTION_S)) {
+			this.idRetention = s.getDouble(ID_RETENTION_S);
+		}
+		else if (this.msgTtl != Message.INFINITE_TTL) {
+			this.idRetention = this.msgTtl * 60;
+		}
+		else {
+			this.idRetention = -1;
+		}
 		
 	}
 	
@@ -122,9 +154,12 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
+		this.incomingMessages = new ArrayList<Message>();
+		this.incomingFrom = new ArrayList<DTNHost>();
+		this.messages = new MessageMap();
+		this.messagesByTo = new HashMap<DTNHost, RecipientMessages>();
+		this.bufferOccupancy = 0;
+		this.deliveredIds = new MessageIdSet();
 		this.mListeners = mListeners;
 		this.host = host;
 	}
@@ -137,6 +172,7 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.idRetention = r.idRetention;
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -157,6 +193,37 @@ public abstract class MessageRouter {
 				app.update(this.host);
 			}
 		}
+	}
+	
+	/**
+	 * Finalizes a transfer this router is sending when the transfer
+	 * completes between the update intervals (see
+	 * {@link core.TransferCompletionScheduler}). Only the transfer is
+	 * finalized; nothing else of {@link #update()} is done. This version
+	 * does nothing.
+	 * @param con The connection whose transfer completed
+	 */
+	public void completeTransfer(Connection con) { }
+	
+	/**
+	 * Tries to start a new transfer right away, e.g., when a transfer of
+	 * this router's host completes between the update intervals. Unlike
+	 * {@link #update()}, this does no periodic work (such as updating the
+	 * applications). This version does nothing.
+	 */
+	public void tryNextTransfer() { }
+	
+	/**
+	 * Returns true if this router is idle: updating it does nothing until
+	 * its host gets a connection change or a message. The updates of idle
+	 * routers can be skipped (see {@link DTNHost#update(boolean, boolean)}).
+	 * This version returns true if the router has no applications to
+	 * update. Subclasses that do other work in {@link #update()} must
+	 * check that work too.
+	 * @return True if the router is idle, false if not
+	 */
+	public boolean isIdle() {
+		return this.applications.isEmpty();
 	}
 	
 	/**
@@ -171,7 +238,7 @@ public abstract class MessageRouter {
 	 * @return The message
 	 */
 	protected Message getMessage(String id) {
-		return this.messages.get(id);
+		return this.messages.get(Message.getIdIndex(id));
 	}
 	
 	/**
@@ -180,7 +247,18 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	protected boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return this.messages.containsKey(Message.getIdIndex(id));
+	}
+	
+	/**
+	 * Checks if this router has a message with the same ID as the given
+	 * message buffered. Faster than {@link #hasMessage(String)} because
+	 * the ID doesn't need to be looked up.
+	 * @param m The message
+	 * @return True if the router has message with the same id, false if not
+	 */
+	protected boolean hasMessage(Message m) {
+		return this.messages.containsKey(m.getIdIndex());
 	}
 	
 	/**
@@ -192,7 +270,37 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredIds.contains(m.getIdIndex()));
+	}
+	
+	/**
+	 * Returns a summary vector of this router: the IDs of the messages this
+	 * router has in its buffer or has received as the final recipient.
+	 * A peer doesn't need to offer these messages to this router. The set
+	 * starts where the set of delivered IDs starts, so the IDs that have
+	 * been forgotten (see {@link #ID_RETENTION_S}) are not in it.
+	 * @return The IDs in a new set
+	 */
+	protected MessageIdSet getSummaryVector() {
+		MessageIdSet ids = new MessageIdSet(this.deliveredIds);
+		for (Message m : this.messages.values()) {
+			ids.add(m.getIdIndex());
+		}
+		return ids;
+	}
+	
+	/**
+	 * Forgets the IDs of a set whose messages' TTL has ended more than the
+	 * ID retention time ago (see {@link #ID_RETENTION_S}). Does nothing if
+	 * the IDs are never forgotten. The sets are trimmed just before IDs are
+	 * added to them, not in {@link #update()}, so the routers that don't
+	 * get new IDs are left idle.
+	 * @param ids The ID set
+	 */
+	protected void forgetExpiredIds(MessageIdSet ids) {
+		if (this.idRetention >= 0) {
+			ids.forgetExpired(SimClock.getTime() - this.idRetention);
+		}
 	}
 	
 	/**
@@ -207,6 +315,33 @@ public abstract class MessageRouter {
 		return this.messages.values();
 	}
 	
+	/**
+	 * Returns the messages of this router whose final recipient is the
+	 * given host. The list is a read-only view and it must not be iterated
+	 * while the buffer is modified.
+	 * @param to The final recipient
+	 * @return The messages in the order they are in the buffer
+	 */
+	protected List<Message> getMessagesFor(DTNHost to) {
+		RecipientMessages msgs = this.messagesByTo.get(to);
+		if (msgs == null) {
+			return Collections.emptyList();
+		}
+		return msgs.view;
+	}
+
+	/**
+	 * Compares the positions of two messages in the buffer
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return -1, 0 or 1 if m1 is before, at the same position or after m2
+	 */
+	protected int compareBufferPositions(Message m1, Message m2) {
+		int pos1 = this.messages.indexOf(m1.getIdIndex());
+		int pos2 = this.messages.indexOf(m2.getIdIndex());
+		return pos1 < pos2 ? -1 : (pos1 == pos2 ? 0 : 1);
+	}
+	
 	/**
 	 * Returns the number of messages this router has
 	 * @return How many messages this router has
@@ -231,17 +366,21 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public int getFreeBufferSize() {
-		int occupancy = 0;
-		
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 		
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-		
-		return this.getBufferSize() - occupancy;
+		return this.getBufferSize() - this.bufferOccupancy;
+	}
+	
+	/**
+	 * Returns the total size of the messages in the buffer. The size is
+	 * kept up to date when messages are added to and removed from the
+	 * buffer, so this is a constant time operation.
+	 * @return The amount of occupied space in the buffer (bytes)
+	 */
+	public int getOccupiedBufferSize() {
+		return this.bufferOccupancy;
 	}
 	
 	/**
@@ -341,7 +480,8 @@ public abstract class MessageRouter {
 			addToMessages(aMessage, false);
 		}
 		else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			forgetExpiredIds(this.deliveredIds);
+			this.deliveredIds.add(aMessage.getIdIndex());
 		}
 		
 		for (MessageListener ml : this.mListeners) {
@@ -359,7 +499,15 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		int i = indexOfIncoming(m.getId(), from);
+		if (i >= 0) {
+			this.incomingMessages.set(i, m);
+		}
+		else {
+			this.incomingMessages.add(m);
+			this.incomingFrom.add(from);
+			Message.retainIdIndex(m.getIdIndex());
+		}
 	}
 	
 	/**
@@ -370,7 +518,32 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		int i = indexOfIncoming(id, from);
+		if (i < 0) {
+			return null;
+		}
+		this.incomingFrom.remove(i);
+		Message m = this.incomingMessages.remove(i);
+		Message.releaseIdIndex(m.getIdIndex());
+		return m;
+	}
+	
+	/**
+	 * Returns the index of an incoming message in the incoming messages
+	 * buffer. There are only few incoming messages at a time, so they are
+	 * searched linearly.
+	 * @param id ID of the message
+	 * @param from The host that sends this message (previous hop)
+	 * @return The index or -1 if such message wasn't found
+	 */
+	private int indexOfIncoming(String id, DTNHost from) {
+		for (int i=0, n=this.incomingMessages.size(); i<n; i++) {
+			if (this.incomingFrom.get(i) == from &&
+					this.incomingMessages.get(i).getId().equals(id)) {
+				return i;
+			}
+		}
+		return -1;
 	}
 	
 	/**
@@ -380,7 +553,12 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+		for (Message m : this.incomingMessages) {
+			if (m.getId().equals(id)) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
@@ -391,7 +569,16 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		Message old = this.messages.put(m);
+		if (old != null) { // replaced a message with the same ID
+			this.bufferOccupancy -= old.getSize();
+			removeFromRecipientIndex(old);
+		}
+		else {
+			Message.retainIdIndex(m.getIdIndex());
+		}
+		this.bufferOccupancy += m.getSize();
+		addToRecipientIndex(m);
 		
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -406,9 +593,46 @@ public abstract class MessageRouter {
 	 * @return The removed message or null if message for the ID wasn't found
 	 */
 	protected Message removeFromMessages(String id) {
-		Message m = this.messages.remove(id);
+		Message m = this.messages.remove(Message.getIdIndex(id));
+		if (m != null) {
+			this.bufferOccupancy -= m.getSize();
+			removeFromRecipientIndex(m);
+			Message.releaseIdIndex(m.getIdIndex());
+		}
 		return m;
 	}
+
+	/**
+	 * Adds a buffered message to the list of its final recipient's messages
+	 * at the message's position in the buffer. New messages are the last
+	 * ones in the buffer, so they're usually just appended.
+	 * @param m The message
+	 */
+	private void addToRecipientIndex(Message m) {
+		RecipientMessages msgs = this.messagesByTo.get(m.getTo());
+		if (msgs == null) {
+			msgs = new RecipientMessages();
+			this.messagesByTo.put(m.getTo(), msgs);
+		}
+		List<Message> list = msgs.list;
+		int i = list.size();
+		while (i > 0 && compareBufferPositions(list.get(i - 1), m) > 0) {
+			i--;
+		}
+		list.add(i, m);
+	}
+
+	/**
+	 * Removes a message from the list of its final recipient's messages
+	 * @param m The message
+	 */
+	private void removeFromRecipientIndex(Message m) {
+		List<Message> list = this.messagesByTo.get(m.getTo()).list;
+		list.remove(m);
+		if (list.isEmpty()) {
+			this.messagesByTo.remove(m.getTo());
+		}
+	}
 	
 	/**
 	 * This method should be called (on the receiving host) when a message 
@@ -521,8 +745,10 @@ public abstract class MessageRouter {
 	protected int compareByQueueMode(Message m1, Message m2) {
 		switch (sendQueueMode) {
 		case Q_MODE_RANDOM:
-			/* return randomly (enough) but consistently -1, 0 or 1 */
-			return (m1.hashCode()/2 + m2.hashCode()/2) % 3 - 1; 
+			/* return randomly (enough) but consistently -1, 0 or 1. Unique
+			 * IDs are used instead of (identity) hash codes so that the order 
+			 * is the same regardless of the JVM and its threads */
+			return (m1.getUniqueId()/2 + m2.getUniqueId()/2) % 3 - 1; 
 		case Q_MODE_FIFO:
 			double diff = m1.getReceiveTime() - m2.getReceiveTime();
 			if (diff == 0) {
@@ -543,7 +769,7 @@ public abstract class MessageRouter {
 		RoutingInfo ri = new RoutingInfo(this);
 		RoutingInfo incoming = new RoutingInfo(this.incomingMessages.size() + 
 				" incoming message(s)");
-		RoutingInfo delivered = new RoutingInfo(this.deliveredMessages.size() +
+		RoutingInfo delivered = new RoutingInfo(this.deliveredIds.size() +
 				" delivered message(s)");
 		
 		RoutingInfo cons = new RoutingInfo(host.getConnections().size() + 
@@ -553,12 +779,13 @@ public abstract class MessageRouter {
 		ri.addMoreInfo(delivered);
 		ri.addMoreInfo(cons);
 		
-		for (Message m : this.incomingMessages.values()) {
+		for (Message m : this.incomingMessages) {
 			incoming.addMoreInfo(new RoutingInfo(m));
 		}
 		
-		for (Message m : this.deliveredMessages.values()) {
-			delivered.addMoreInfo(new RoutingInfo(m + " path:" + m.getHops()));
+		for (int i = this.deliveredIds.nextIdIndex(0); i >= 0;
+				i = this.deliveredIds.nextIdIndex(i + 1)) {
+			delivered.addMoreInfo(new RoutingInfo(Message.getIdOfIndex(i)));
 		}
 		
 		for (Connection c : host.getConnections()) {
@@ -621,4 +848,13 @@ public abstract class MessageRouter {
 			this.getHost().toString() + " with " + getNrofMessages() 
 			+ " messages";
 	}
+
+	/**
+	 * The buffered messages of one final recipient and a read-only view of
+	 * them
+	 */
+	private static class RecipientMessages {
+		private ArrayList<Message> list = new ArrayList<Message>();
+		private List<Message> view = Collections.unmodifiableList(this.list);
+	}
 }
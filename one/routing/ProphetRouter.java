@@ -5,12 +5,11 @@
 package routing;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import core.Connection;
 import core.DTNHost;
@@ -51,10 +50,17 @@ public class ProphetRouter extends ActiveRouter {
 	/** value of beta setting */
 	private double beta;
 
-	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	/** delivery predictabilities (by host address) */
+	private double[] preds;
+	/** (sim)times when the predictabilities were last aged (by address) */
+	private double[] predTimes;
+	/** hosts that have a delivery predictability (by address, null for the
+	 * hosts without one) */
+	private DTNHost[] predHosts;
+	/** addresses of the hosts that have a delivery predictability */
+	private int[] predAddresses;
+	/** number of hosts that have a delivery predictability */
+	private int nrofPreds;
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -87,10 +93,14 @@ public class ProphetRouter extends ActiveRouter {
 	}
 	
 	/**
-	 * Initializes predictability hash
+	 * Initializes predictability tables
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new double[0];
+		this.predTimes = new double[0];
+		this.predHosts = new DTNHost[0];
+		this.predAddresses = new int[0];
+		this.nrofPreds = 0;
 	}
 
 	@Override
@@ -110,7 +120,7 @@ public class ProphetRouter extends ActiveRouter {
 	private void updateDeliveryPredFor(DTNHost host) {
 		double oldValue = getPredFor(host);
 		double newValue = oldValue + (1 - oldValue) * P_INIT;
-		preds.put(host, newValue);
+		setPredFor(host, newValue);
 	}
 	
 	/**
@@ -120,13 +130,36 @@ public class ProphetRouter extends ActiveRouter {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
+		int address = host.getAddress();
+		if (address >= predHosts.length || predHosts[address] == null) {
 			return 0;
 		}
+		return getAgedPred(address);
+	}
+	
+	/**
+	 * Sets the prediction (P) value for a host
+	 * @param host The host whose P is set
+	 * @param value The new P value
+	 */
+	private void setPredFor(DTNHost host, double value) {
+		int address = host.getAddress();
+		if (address >= predHosts.length) {
+			int size = Math.max(address + 1, predHosts.length * 2);
+			preds = Arrays.copyOf(preds, size);
+			predTimes = Arrays.copyOf(predTimes, size);
+			predHosts = Arrays.copyOf(predHosts, size);
+		}
+		if (predHosts[address] == null) {
+			if (nrofPreds == predAddresses.length) {
+				predAddresses = Arrays.copyOf(predAddresses,
+						Math.max(4, nrofPreds * 2));
+			}
+			predAddresses[nrofPreds++] = address;
+			predHosts[address] = host;
+		}
+		preds[address] = value;
+		predTimes[address] = SimClock.getTime();
 	}
 	
 	/**
@@ -141,54 +174,49 @@ public class ProphetRouter extends ActiveRouter {
 			" with other routers of same type";
 		
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
-			((ProphetRouter)otherRouter).getDeliveryPreds();
+		ProphetRouter other = (ProphetRouter)otherRouter;
 		
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
+		for (int i=0; i<other.nrofPreds; i++) {
+			int address = other.predAddresses[i];
+			DTNHost c = other.predHosts[address];
+			if (c == getHost()) {
 				continue; // don't add yourself
 			}
 			
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
+			double pOld = getPredFor(c); // P(a,c)_old
+			double pNew = pOld + ( 1 - pOld) * pForHost * 
+				other.getAgedPred(address) * beta;
+			setPredFor(c, pNew);
 		}
 	}
 
 	/**
-	 * Ages all entries in the delivery predictions.
+	 * Ages a delivery prediction entry and returns its value. The entries
+	 * are aged lazily, when they are read.
 	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
+	 * time units that have elapsed since the last time the entry was aged.
+	 * @param address Address of the host whose entry is aged
+	 * @return The aged P value
 	 * @see #SECONDS_IN_UNIT_S
 	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / 
-			secondsInTimeUnit;
-		
-		if (timeDiff == 0) {
-			return;
+	private double getAgedPred(int address) {
+		double now = SimClock.getTime();
+		if (predTimes[address] != now) {
+			double timeDiff = (now - predTimes[address]) / secondsInTimeUnit;
+			preds[address] *= Math.pow(GAMMA, timeDiff);
+			predTimes[address] = now;
 		}
-		
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-		
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-	
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
+		return preds[address];
 	}
 	
 	@Override
 	public void update() {
 		super.update();
+		tryNextTransfer();
+	}
+	
+	@Override
+	public void tryNextTransfer() {
 		if (!canStartTransfer() ||isTransferring()) {
 			return; // nothing to transfer or is currently transferring 
 		}
@@ -207,8 +235,7 @@ public class ProphetRouter extends ActiveRouter {
 	 * @return The return value of {@link #tryMessagesForConnected(List)}
 	 */
 	private Tuple<Message, Connection> tryOtherMessages() {
-		List<Tuple<Message, Connection>> messages = 
-			new ArrayList<Tuple<Message, Connection>>(); 
+		List<Candidate> candidates = new ArrayList<Candidate>(); 
 	
 		Collection<Message> msgCollection = getMessageCollection();
 		
@@ -223,48 +250,63 @@ public class ProphetRouter extends ActiveRouter {
 			}
 			
 			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
+				if (othRouter.hasMessage(m)) {
 					continue; // skip messages that the other one has
 				}
-				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
+				double othPred = othRouter.getPredFor(m.getTo());
+				if (othPred > getPredFor(m.getTo())) {
 					// the other node has higher probability of delivery
-					messages.add(new Tuple<Message, Connection>(m,con));
+					candidates.add(new Candidate(
+							new Tuple<Message, Connection>(m,con), othPred));
 				}
 			}			
 		}
 		
-		if (messages.size() == 0) {
+		if (candidates.size() == 0) {
 			return null;
 		}
 		
 		// sort the message-connection tuples
-		Collections.sort(messages, new TupleComparator());
+		Collections.sort(candidates, new CandidateComparator());
+		List<Tuple<Message, Connection>> messages = 
+			new ArrayList<Tuple<Message, Connection>>(candidates.size());
+		for (Candidate c : candidates) {
+			messages.add(c.tuple);
+		}
 		return tryMessagesForConnected(messages);	// try to send messages
 	}
 	
+	/**
+	 * Message-Connection-Tuple with the delivery probability of the
+	 * tuple's message by the host on the other side of the connection.
+	 * The probability is looked up once, before the tuples are sorted.
+	 */
+	private static class Candidate {
+		private Tuple<Message, Connection> tuple;
+		private double pred;
+		
+		private Candidate(Tuple<Message, Connection> tuple, double pred) {
+			this.tuple = tuple;
+			this.pred = pred;
+		}
+	}
+	
 	/**
 	 * Comparator for Message-Connection-Tuples that orders the tuples by
 	 * their delivery probability by the host on the other side of the 
 	 * connection (GRTRMax)
 	 */
-	private class TupleComparator implements Comparator 
-		<Tuple<Message, Connection>> {
+	private class CandidateComparator implements Comparator<Candidate> {
 
-		public int compare(Tuple<Message, Connection> tuple1,
-				Tuple<Message, Connection> tuple2) {
-			// delivery probability of tuple1's message with tuple1's connection
-			double p1 = ((ProphetRouter)tuple1.getValue().
-					getOtherNode(getHost()).getRouter()).getPredFor(
-					tuple1.getKey().getTo());
-			// -"- tuple2...
-			double p2 = ((ProphetRouter)tuple2.getValue().
-					getOtherNode(getHost()).getRouter()).getPredFor(
-					tuple2.getKey().getTo());
+		public int compare(Candidate c1, Candidate c2) {
+			double p1 = c1.pred;
+			double p2 = c2.pred;
 
 			// bigger probability should come first
 			if (p2-p1 == 0) {
 				/* equal probabilities -> let queue mode decide */
-				return compareByQueueMode(tuple1.getKey(), tuple2.getKey());
+				return compareByQueueMode(c1.tuple.getKey(),
+						c2.tuple.getKey());
 			}
 			else if (p2-p1 < 0) {
 				return -1;
@@ -277,14 +319,14 @@ public class ProphetRouter extends ActiveRouter {
 	
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
 		RoutingInfo top = super.getRoutingInfo();
-		RoutingInfo ri = new RoutingInfo(preds.size() + 
+		RoutingInfo ri = new RoutingInfo(nrofPreds + 
 				" delivery prediction(s)");
 		
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (int i=0; i<nrofPreds; i++) {
+			int address = predAddresses[i];
+			DTNHost host = predHosts[address];
+			double value = getAgedPred(address);
 			
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
 					host, value)));
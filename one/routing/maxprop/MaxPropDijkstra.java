@@ -1,39 +1,82 @@
-/* 
+/*
  * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+ * Released under GPLv3. See LICENSE.txt for details.
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * <P>
+ * The nodes are indexed by their address and the distances are kept in
+ * primitive arrays. The unvisited nodes are in an indexed binary heap, so
+ * a node's distance is decreased in logarithmic time. The heap arrays are
+ * reused by all searches.
+ * </P>
+ * <P>
+ * The shortest path tree of a source node is kept until the same source is
+ * asked again. The trees record which version of each node's meeting
+ * probability set they were calculated with (see
+ * {@link MeetingProbabilitySet#getVersion()}). When some sets have changed,
+ * only the distances that depended on the changed nodes' links, or that
+ * can get shorter through the changed links, are calculated again. The
+ * repaired distances are the same as the ones a new search would give.
+ * The meeting probabilities must not be larger than one, so that the
+ * distances are not negative.
+ * </P>
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Initial number of nodes the arrays have room for */
+	private static final int INIT_SIZE = 16;
+	/** How many shortest path trees are cached */
+	private static final int MAX_CACHED_TREES = 8;
+
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
-	
+	/** Number of nodes the arrays have room for */
+	private int capacity;
+
+	/** The probability sets the trees are up to date with (by address) */
+	private MeetingProbabilitySet[] knownSets;
+	/** Versions of the known probability sets (by address) */
+	private int[] knownVersions;
+	/** Addresses of the nodes whose probability sets have changed, in the
+	 * order the changes were noticed */
+	private int[] changeLog;
+	/** Number of entries in the change log */
+	private int changeLogSize;
+	/** Cached shortest path trees by their source address (least recently
+	 * used first) */
+	private LinkedHashMap<Integer, PathTree> trees;
+
+	/** Indexed binary heap of the unvisited nodes */
+	private int[] heap;
+	/** Number of nodes in the heap */
+	private int heapSize;
+	/** Positions of the nodes in the heap (-1 if not in the heap) */
+	private int[] heapPos;
+	/** Nodes whose probability sets have changed (repair scratch) */
+	private boolean[] changed;
+	/** Whether a node's distance depends on a changed node (repair scratch;
+	 * see {@link #markAffected(PathTree)}) */
+	private byte[] affected;
+
+	/** Affected state of a node that hasn't been checked yet */
+	private static final byte UNKNOWN = 0;
+	/** Affected state of a node whose path goes through a changed node */
+	private static final byte AFFECTED = 1;
+	/** Affected state of a node whose path doesn't go through a changed
+	 * node */
+	private static final byte UNAFFECTED = 2;
+
 	/**
 	 * Constructor.
 	 * @param probs A reference to the mapping of the known hosts meeting
@@ -41,184 +84,399 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.capacity = INIT_SIZE;
+		this.knownSets = new MeetingProbabilitySet[INIT_SIZE];
+		this.knownVersions = new int[INIT_SIZE];
+		this.changeLog = new int[INIT_SIZE];
+		this.changeLogSize = 0;
+		this.trees = new LinkedHashMap<Integer, PathTree>(16, 0.75f, true);
+		this.heap = new int[INIT_SIZE];
+		this.heapPos = new int[INIT_SIZE];
+		Arrays.fill(this.heapPos, -1);
+		this.heapSize = 0;
+		this.changed = new boolean[INIT_SIZE];
+		this.affected = new byte[INIT_SIZE];
 	}
 
 	/**
-	 * Initializes a new search with the first hop router node
-	 * @param firstHop The first hop router node
-	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-		
-		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
-	}
-	
-	/**
-	 * Calculates total costs to the given set of target nodes. The cost to 
+	 * Calculates total costs to the given set of target nodes. The cost to
 	 * a node is the sum of complements of probabilities that all the links
-	 * come up as the next contact of the nodes. 
+	 * come up as the next contact of the nodes.
 	 * @param from The index (address) of the start node
 	 * @param to The address set of destination nodes
 	 * @return A map of (destination node, cost) tuples
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
+		PathTree tree = getTree(from);
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
-		
-		initWith(from);
-		Integer node = null;
-		
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
-				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
-				nrofNodesToFind--;
-				if (nrofNodesToFind == 0) {
-					break; // all requested nodes found
-				}
-			} 
-			
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+
+		for (Integer node : to) {
+			if (node < tree.dist.length && tree.dist[node] != INFINITY) {
+				distMap.put(node, tree.dist[node]);
+			}
 		}
-			
+
 		return distMap;
 	}
-	
+
 	/**
-	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
+	 * Returns an up to date shortest path tree of a source node
+	 * @param source Address of the source node
+	 * @return The tree
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
-		
-		if (!this.probs.containsKey(node)) {
-			return; // node's neighbors are not known
-		}
-		
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-		
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
-			}
-						
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distancesFromStart.get(n) > nDist) { 
-				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
+	private PathTree getTree(int source) {
+		noticeChanges();
+		ensureCapacity(source);
+
+		PathTree tree = this.trees.get(source);
+		if (tree == null) {
+			tree = new PathTree(source);
+			this.trees.put(source, tree);
+			if (this.trees.size() > MAX_CACHED_TREES) {
+				Iterator<PathTree> i = this.trees.values().iterator();
+				i.next();
+				i.remove(); // drop the least recently used tree
+			}
+			calculate(tree);
+		}
+		else if (tree.appliedChanges < this.changeLogSize) {
+			tree.ensureCapacity();
+			if (this.changeLogSize - tree.appliedChanges > this.capacity / 2) {
+				calculate(tree); // so many changes that repairing won't pay
+			}
+			else {
+				repair(tree);
 			}
 		}
+		else {
+			tree.ensureCapacity();
+		}
+
+		return tree;
 	}
-	
+
 	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
+	 * Checks which nodes' probability sets have changed since the last
+	 * search and adds them to the change log
 	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private void noticeChanges() {
+		for (Map.Entry<Integer, MeetingProbabilitySet> e : probs.entrySet()) {
+			int node = e.getKey();
+			MeetingProbabilitySet set = e.getValue();
+			ensureCapacity(node);
+			if (knownSets[node] != set ||
+					knownVersions[node] != set.getVersion()) {
+				knownSets[node] = set;
+				knownVersions[node] = set.getVersion();
+				logChange(node);
+			}
+		}
 	}
-	
+
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the 
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to". 
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Adds a node to the change log. If the log grows long, the cached
+	 * trees are dropped and the log is started again.
+	 * @param node Address of the node whose probability set changed
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private void logChange(int node) {
+		if (this.changeLogSize == this.changeLog.length) {
+			if (this.changeLogSize >= 4 * this.capacity) {
+				this.trees.clear(); // new trees are calculated when needed
+				this.changeLogSize = 0;
+			}
+			else {
+				this.changeLog = Arrays.copyOf(this.changeLog,
+						this.changeLog.length * 2);
+			}
+		}
+		this.changeLog[this.changeLogSize++] = node;
 	}
-	
+
 	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
+	 * Calculates a shortest path tree from scratch
+	 * @param tree The tree to calculate
 	 */
-	private class DistanceComparator implements 
-		Comparator<Integer> {
-		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
+	private void calculate(PathTree tree) {
+		tree.ensureCapacity();
+		Arrays.fill(tree.dist, INFINITY);
+		Arrays.fill(tree.parent, -1);
+
+		tree.dist[tree.source] = 0;
+		heapUpdate(tree, tree.source);
+		propagate(tree);
+		tree.appliedChanges = this.changeLogSize;
+	}
+
+	/**
+	 * Repairs a shortest path tree after some nodes' probability sets have
+	 * changed. The distances of the nodes whose path goes through a changed
+	 * node are calculated again from the unaffected nodes, and the changed
+	 * nodes' new links are relaxed. Then the nodes whose distances
+	 * decreased are relaxed in distance order, as in a normal search.
+	 * @param tree The tree to repair
+	 */
+	private void repair(PathTree tree) {
+		for (int i = tree.appliedChanges; i < this.changeLogSize; i++) {
+			this.changed[this.changeLog[i]] = true;
+		}
+
+		int nrofAffected = markAffected(tree);
+		for (int n = 0; n < this.capacity; n++) {
+			if (this.affected[n] == AFFECTED) {
+				tree.dist[n] = INFINITY;
+				tree.parent[n] = -1;
 			}
-			else if (dist1 < dist2) {
-				return -1;
+		}
+
+		/* relax the links of the unaffected nodes: all links of the changed
+		 * nodes and the links to the affected nodes of the others */
+		for (Map.Entry<Integer, MeetingProbabilitySet> e : probs.entrySet()) {
+			int node = e.getKey();
+			if (this.affected[node] == AFFECTED ||
+					tree.dist[node] == INFINITY) {
+				continue;
 			}
-			else {
-				return node1.compareTo(node2);
+			if (this.changed[node]) {
+				relax(tree, node, e.getValue(), false);
+			}
+			else if (nrofAffected > 0) {
+				relax(tree, node, e.getValue(), true);
 			}
 		}
+
+		for (int i = tree.appliedChanges; i < this.changeLogSize; i++) {
+			this.changed[this.changeLog[i]] = false;
+		}
+		Arrays.fill(this.affected, UNKNOWN);
+
+		propagate(tree);
+		tree.appliedChanges = this.changeLogSize;
 	}
-	
+
 	/**
-	 * Simple Map implementation for storing distances. 
+	 * Marks the nodes whose shortest path goes through a changed node as
+	 * affected. A changed node itself is affected only if its own path goes
+	 * through another changed node.
+	 * @param tree The tree whose paths are checked
+	 * @return The number of affected nodes
 	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>(); 
+	private int markAffected(PathTree tree) {
+		int nrofAffected = 0;
+		int[] chain = this.heap; // the heap is empty; use it as a stack
+
+		for (int n = 0; n < this.capacity; n++) {
+			if (this.affected[n] != UNKNOWN) {
+				continue;
+			}
+
+			/* walk up the tree until the state of the path is known */
+			int length = 0;
+			int node = n;
+			byte state;
+			while (true) {
+				chain[length++] = node;
+				int p = tree.parent[node];
+				if (p == -1) {
+					state = UNAFFECTED;
+					break;
+				}
+				if (this.changed[p]) {
+					state = AFFECTED;
+					break;
+				}
+				if (this.affected[p] != UNKNOWN) {
+					state = this.affected[p];
+					break;
+				}
+				node = p;
+			}
+
+			for (int i = 0; i < length; i++) {
+				this.affected[chain[i]] = state;
+			}
+			if (state == AFFECTED) {
+				nrofAffected += length;
+			}
 		}
-		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+
+		return nrofAffected;
+	}
+
+	/**
+	 * Visits the nodes in the heap in distance order and relaxes their
+	 * links
+	 * @param tree The tree whose distances are updated
+	 */
+	private void propagate(PathTree tree) {
+		while (this.heapSize > 0) {
+			int node = heapPoll(tree);
+			MeetingProbabilitySet set = this.probs.get(node);
+			if (set != null) {
+				relax(tree, node, set, false);
 			}
-			else {
-				return INFINITY;
+		}
+	}
+
+	/**
+	 * Relaxes the links of a node (updates the shortest distances of its
+	 * neighbors).
+	 * @param tree The tree whose distances are updated
+	 * @param node The node whose links are relaxed
+	 * @param set Probability set of the node
+	 * @param affectedOnly If true, only links to affected nodes are relaxed
+	 */
+	private void relax(PathTree tree, int node, MeetingProbabilitySet set,
+			boolean affectedOnly) {
+		double nodeDist = tree.dist[node];
+
+		for (int i=0, size=set.size(); i<size; i++) {
+			int n = set.getNodeAt(i);
+			if (n >= this.capacity) {
+				ensureCapacity(n);
+				tree.ensureCapacity();
+			}
+			if (affectedOnly && this.affected[n] != AFFECTED) {
+				continue;
+			}
+
+			// n node's distance from path's source node
+			double nDist = nodeDist + (1 - set.getProbAt(i));
+
+			if (tree.dist[n] > nDist) {
+				// stored distance > found dist -> update
+				tree.dist[n] = nDist;
+				tree.parent[n] = node;
+				heapUpdate(tree, n);
 			}
 		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+	}
+
+	/**
+	 * Makes sure the arrays have room for the given node
+	 * @param node Address of the node
+	 */
+	private void ensureCapacity(int node) {
+		if (node < this.capacity) {
+			return;
+		}
+		int size = Math.max(node + 1, this.capacity * 2);
+		this.knownSets = Arrays.copyOf(this.knownSets, size);
+		this.knownVersions = Arrays.copyOf(this.knownVersions, size);
+		this.heap = Arrays.copyOf(this.heap, size);
+		this.heapPos = Arrays.copyOf(this.heapPos, size);
+		Arrays.fill(this.heapPos, this.capacity, size, -1);
+		this.changed = Arrays.copyOf(this.changed, size);
+		this.affected = Arrays.copyOf(this.affected, size);
+		this.capacity = size;
+	}
+
+	/**
+	 * Returns true if node a should be visited before node b
+	 * @param tree The tree whose distances are compared
+	 * @param a The first node
+	 * @param b The second node
+	 * @return True if a's distance is smaller, or the distances are equal
+	 * and a's address is smaller
+	 */
+	private boolean isBefore(PathTree tree, int a, int b) {
+		double da = tree.dist[a];
+		double db = tree.dist[b];
+		return da < db || (da == db && a < b);
+	}
+
+	/**
+	 * Adds a node to the heap or moves it up after its distance decreased
+	 * @param tree The tree whose distances are used
+	 * @param node The node
+	 */
+	private void heapUpdate(PathTree tree, int node) {
+		int i = this.heapPos[node];
+		if (i == -1) {
+			i = this.heapSize++;
 		}
-		
+
+		/* sift up */
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			int p = this.heap[parent];
+			if (!isBefore(tree, node, p)) {
+				break;
+			}
+			this.heap[i] = p;
+			this.heapPos[p] = i;
+			i = parent;
+		}
+		this.heap[i] = node;
+		this.heapPos[node] = i;
+	}
+
+	/**
+	 * Removes and returns the first node of the heap
+	 * @param tree The tree whose distances are used
+	 * @return The node with the smallest distance
+	 */
+	private int heapPoll(PathTree tree) {
+		int first = this.heap[0];
+		this.heapPos[first] = -1;
+		int last = this.heap[--this.heapSize];
+
+		if (this.heapSize > 0) {
+			/* sift down */
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= this.heapSize) {
+					break;
+				}
+				if (child + 1 < this.heapSize &&
+						isBefore(tree, this.heap[child + 1], this.heap[child])) {
+					child++;
+				}
+				if (!isBefore(tree, this.heap[child], last)) {
+					break;
+				}
+				this.heap[i] = this.heap[child];
+				this.heapPos[this.heap[i]] = i;
+				i = child;
+			}
+			this.heap[i] = last;
+			this.heapPos[last] = i;
+		}
+
+		return first;
+	}
+
+	/**
+	 * Shortest path tree of a source node
+	 */
+	private class PathTree {
+		/** address of the source node */
+		private int source;
+		/** distances of the nodes from the source (by address) */
+		private double[] dist;
+		/** previous nodes on the shortest paths (by address, -1 for none) */
+		private int[] parent;
+		/** number of change log entries the tree is up to date with */
+		private int appliedChanges;
+
+		private PathTree(int source) {
+			this.source = source;
+			this.dist = new double[0];
+			this.parent = new int[0];
+		}
+
 		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
+		 * Makes sure the tree's arrays are as large as the other arrays.
+		 * New nodes are not reachable.
 		 */
-		public String toString() {
-			return map.toString();
+		private void ensureCapacity() {
+			int oldSize = this.dist.length;
+			if (oldSize < capacity) {
+				this.dist = Arrays.copyOf(this.dist, capacity);
+				this.parent = Arrays.copyOf(this.parent, capacity);
+				Arrays.fill(this.dist, oldSize, capacity, INFINITY);
+				Arrays.fill(this.parent, oldSize, capacity, -1);
+			}
 		}
 	}
-}
\ No newline at end of file
+}
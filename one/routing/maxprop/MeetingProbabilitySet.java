@@ -1,28 +1,65 @@
 /* 
  * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+ * Released under GPLv3. See LICENSE.txt for details. 
  */
 package routing.maxprop;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import core.SimClock;
+import core.SimError;
 
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
  * router module.
+ * <P>
+ * The probabilities are stored in primitive arrays. The normalization after
+ * a meeting is done lazily: the stored values share a common scale factor,
+ * so only the factor is divided instead of every probability. A set with a
+ * maximum size keeps its nodes in a min-heap by probability, so the node to
+ * drop from a full set is found without going through the whole set.
+ * A set can be frozen to an immutable snapshot (see {@link #snapshot()})
+ * that can be shared by any number of routers, so passing the set to other
+ * hosts doesn't require a copy per receiver.
+ * </P>
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** the smallest scale factor; when the factor would get smaller, it is
+	 * applied to the stored values (so they don't overflow) */
+	private static final double MIN_SCALE = 1e-150;
+	/** addresses of the nodes that have a probability (in snapshots in
+	 * ascending order) */
+	private int[] nodes;
+	/** meeting probabilities (probability that the next node one meets is X)
+	 * divided by the scale factor, in the same order as the nodes */
+	private double[] probs;
+	/** scale factor of the stored probabilities (1 for snapshots) */
+	private double scale;
+	/** number of nodes that have a probability */
+	private int size;
+	/** positions of the nodes in the arrays by address (-1 if the node has no
+	 * probability); null for snapshots, which use binary search instead */
+	private int[] positions;
+	/** min-heap of the nodes by probability (null if the set size is
+	 * infinite or this set is a snapshot) */
+	private int[] heap;
+	/** positions of the nodes in the heap by address */
+	private int[] heapPositions;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
+	/** number of times the probabilities have been changed */
+	private int version;
 	/** the alpha parameter */
 	private double alpha;
     private int maxSetSize;
+	/** true if this set is an immutable snapshot */
+	private boolean frozen;
+	/** the latest snapshot of this set (null if none has been taken) */
+	private MeetingProbabilitySet snapshot;
 	
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
@@ -32,14 +69,22 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
         if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-        	this.probs = new HashMap<Integer, Double>();
         	this.maxSetSize = INFINITE_SET_SIZE;
+        	this.nodes = new int[16];
         } else {
-        	this.probs = new HashMap<Integer, Double>(maxSetSize);
             this.maxSetSize = maxSetSize;
+        	this.nodes = new int[Math.min(maxSetSize, 1024)];
         }
+		this.probs = new double[this.nodes.length];
+		this.scale = 1.0;
+		this.positions = new int[16];
+		Arrays.fill(this.positions, -1);
+		if (this.maxSetSize != INFINITE_SET_SIZE) {
+			this.heap = new int[this.nodes.length];
+			this.heapPositions = new int[this.positions.length];
+		}
+		this.size = 0;
 		this.lastUpdateTime = 0;
 	}
 	
@@ -60,7 +105,7 @@ public class MeetingProbabilitySet {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			put(i, prob);
 		}
 	}
 	
@@ -73,38 +118,37 @@ public class MeetingProbabilitySet {
 	 * @param index The node index to update the probability for
 	 */
 	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
-        double smallestValue = Double.MAX_VALUE;
-
+		checkNotFrozen();
 		this.lastUpdateTime = SimClock.getTime();
+		this.version++;
 		
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+		if (this.size == 0) { // first entry
+			put(index, 1.0);
 			return;
 		}
 		
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		put(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
-		 * normalize to one by dividing all the entries by 1+alpha */ 
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
-            }
-
+		 * normalize to one by dividing all the entries by 1+alpha
+		 * (i.e., their common scale factor) */
+		this.scale = this.scale / (1+alpha);
+		if (this.scale < MIN_SCALE) {
+			applyScale();
 		}
 
-        if (probs.size() >= maxSetSize) {
-            core.Debug.p("Probsize: " + probs.size() + " dropping " + 
-                    probs.remove(smallestEntry.getKey()));
+		/* of equally small entries, the one of the smallest node is dropped */
+        if (this.size >= maxSetSize) {
+            core.Debug.p("Probsize: " + this.size + " dropping " +
+                    removeAt(this.positions[this.heap[0]]));
         }
 	}
 	
 	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+		checkNotFrozen();
+		this.version++;
+		put(index, iet);
 	}
 	
 	/**
@@ -113,8 +157,9 @@ public class MeetingProbabilitySet {
 	 * @return the current delivery probability value
 	 */
 	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+		int pos = positionOf(index);
+		if (pos >= 0) {
+			return this.probs[pos] * this.scale;
 		}
 		else {
 			/* the node with the given index has not been met */
@@ -123,11 +168,55 @@ public class MeetingProbabilitySet {
 	}
 	
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns the number of nodes that have a probability in this set
+	 * @return the number of nodes
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the address of the node at the given position of the set.
+	 * Together with {@link #getProbAt(int)} this can be used for going
+	 * through the probabilities without boxing them.
+	 * @param i The position (0 &le; i &lt; {@link #size()})
+	 * @return the address of the node
+	 */
+	public int getNodeAt(int i) {
+		return this.nodes[i];
+	}
+
+	/**
+	 * Returns the probability at the given position of the set
+	 * @param i The position (0 &le; i &lt; {@link #size()})
+	 * @return the probability of the node {@link #getNodeAt(int)}
+	 */
+	public double getProbAt(int i) {
+		return this.probs[i] * this.scale;
+	}
+
+	/**
+	 * Returns the probabilities of this set as a map. The map is a copy;
+	 * use {@link #getNodeAt(int)} and {@link #getProbAt(int)} where the
+	 * copying matters.
+	 * @return a node address to probability map
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> map = new HashMap<Integer, Double>();
+		for (int i=0; i<this.size; i++) {
+			map.put(this.nodes[i], getProbAt(i));
+		}
+		return map;
+	}
+	
+	/**
+	 * Returns the version of the probabilities. The version changes every
+	 * time the probabilities change, so it tells users of the set whether
+	 * values they have calculated from it are still valid.
+	 * @return The version number
+	 */
+	public int getVersion() {
+		return this.version;
 	}
 	
 	/**
@@ -142,11 +231,21 @@ public class MeetingProbabilitySet {
 	 * Enables changing the alpha parameter dynamically
 	 */
 	public void setAlpha(double alpha) {
+		checkNotFrozen();
 		this.alpha = alpha;
 	}
 	
 	/**
-	 * Returns a deep copy of the probability set
+	 * Returns true if this set is an immutable snapshot
+	 * @return true if this set can't be modified
+	 */
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+
+	/**
+	 * Returns a deep copy of the probability set. The copy can be modified
+	 * even if this set is a snapshot.
 	 * @return a deep copy of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
@@ -154,13 +253,242 @@ public class MeetingProbabilitySet {
 				this.maxSetSize, alpha);
 		
 		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
+		for (int i=0; i<this.size; i++) {
+			replica.put(this.nodes[i], getProbAt(i));
 		}
 		
 		replica.lastUpdateTime = this.lastUpdateTime;
 		return replica;
 	}
+
+	/**
+	 * Returns an immutable snapshot of the current probabilities. The
+	 * snapshot of a version is taken only once and then shared by all the
+	 * callers; a snapshot is its own snapshot. The snapshot has the same
+	 * version and last update time as this set had when it was taken.
+	 * @return an immutable copy of this set
+	 */
+	public MeetingProbabilitySet snapshot() {
+		if (this.frozen) {
+			return this;
+		}
+		if (this.snapshot != null && this.snapshot.version == this.version) {
+			return this.snapshot;
+		}
+
+		MeetingProbabilitySet s = new MeetingProbabilitySet(this);
+		this.snapshot = s;
+		return s;
+	}
+
+	/**
+	 * Snapshot constructor. Creates a frozen copy of the given set with the
+	 * nodes in ascending order.
+	 * @param set The set to copy
+	 */
+	private MeetingProbabilitySet(MeetingProbabilitySet set) {
+		this.alpha = set.alpha;
+		this.maxSetSize = set.maxSetSize;
+		this.lastUpdateTime = set.lastUpdateTime;
+		this.version = set.version;
+		this.size = set.size;
+		this.frozen = true;
+		this.positions = null;
+		this.scale = 1.0;
+
+		this.nodes = Arrays.copyOf(set.nodes, set.size);
+		Arrays.sort(this.nodes);
+		this.probs = new double[set.size];
+		for (int i=0; i<this.size; i++) {
+			this.probs[i] = set.probs[set.positions[this.nodes[i]]] * set.scale;
+		}
+	}
+
+	/**
+	 * Returns the position of a node in the arrays
+	 * @param node Address of the node
+	 * @return the position or a negative value if the node has no
+	 * probability
+	 */
+	private int positionOf(int node) {
+		if (this.positions == null) {
+			return Arrays.binarySearch(this.nodes, 0, this.size, node);
+		}
+		return node >= 0 && node < this.positions.length ?
+				this.positions[node] : -1;
+	}
+
+	/**
+	 * Sets the probability of a node
+	 * @param node Address of the node
+	 * @param value The probability
+	 */
+	private void put(int node, double value) {
+		int pos = positionOf(node);
+		if (pos >= 0) {
+			this.probs[pos] = value / this.scale;
+			if (this.heap != null) {
+				siftUp(this.heapPositions[node]);
+				siftDown(this.heapPositions[node]);
+			}
+			return;
+		}
+
+		if (this.size == this.nodes.length) {
+			this.nodes = Arrays.copyOf(this.nodes, this.size * 2);
+			this.probs = Arrays.copyOf(this.probs, this.size * 2);
+			if (this.heap != null) {
+				this.heap = Arrays.copyOf(this.heap, this.size * 2);
+			}
+		}
+		if (node >= this.positions.length) {
+			int oldLength = this.positions.length;
+			this.positions = Arrays.copyOf(this.positions,
+					Math.max(node + 1, oldLength * 2));
+			Arrays.fill(this.positions, oldLength, this.positions.length, -1);
+			if (this.heap != null) {
+				this.heapPositions = Arrays.copyOf(this.heapPositions,
+						this.positions.length);
+			}
+		}
+		this.nodes[this.size] = node;
+		this.probs[this.size] = value / this.scale;
+		this.positions[node] = this.size;
+		if (this.heap != null) {
+			placeInHeap(node, this.size);
+			siftUp(this.size);
+		}
+		this.size++;
+	}
+
+	/**
+	 * Removes the probability at the given position. The last entry is
+	 * moved to its place.
+	 * @param pos The position
+	 * @return the removed probability
+	 */
+	private double removeAt(int pos) {
+		int node = this.nodes[pos];
+		double value = this.probs[pos] * this.scale;
+
+		if (this.heap != null) {
+			/* move the heap's last node to the removed node's place */
+			int heapPos = this.heapPositions[node];
+			int last = this.heap[this.size - 1];
+			placeInHeap(last, heapPos);
+			this.positions[node] = -1;
+			this.size--;
+			if (heapPos < this.size) {
+				siftUp(heapPos);
+				siftDown(this.heapPositions[last]);
+			}
+		}
+		else {
+			this.positions[node] = -1;
+			this.size--;
+		}
+
+		if (pos != this.size) {
+			this.nodes[pos] = this.nodes[this.size];
+			this.probs[pos] = this.probs[this.size];
+			this.positions[this.nodes[pos]] = pos;
+		}
+		return value;
+	}
+
+	/**
+	 * Multiplies the stored probabilities by the scale factor and resets
+	 * the factor to one
+	 */
+	private void applyScale() {
+		for (int i=0; i<this.size; i++) {
+			this.probs[i] = this.probs[i] * this.scale;
+		}
+		this.scale = 1.0;
+
+		if (this.heap != null) {
+			/* rounding may have made some values equal; restore the order
+			 * of the equal values */
+			for (int i = this.size / 2 - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if a node is before another node in the heap, i.e., it
+	 * has a smaller probability or an equal probability and a smaller address
+	 * @param a Address of the first node
+	 * @param b Address of the other node
+	 * @return true if node a is before node b
+	 */
+	private boolean isBefore(int a, int b) {
+		double pa = this.probs[this.positions[a]];
+		double pb = this.probs[this.positions[b]];
+		return pa < pb || (pa == pb && a < b);
+	}
+
+	/**
+	 * Moves a node in the heap towards the root until the heap is in order
+	 * @param i The heap position of the node
+	 */
+	private void siftUp(int i) {
+		int node = this.heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!isBefore(node, this.heap[parent])) {
+				break;
+			}
+			placeInHeap(this.heap[parent], i);
+			i = parent;
+		}
+		placeInHeap(node, i);
+	}
+
+	/**
+	 * Moves a node in the heap towards the leaves until the heap is in order
+	 * @param i The heap position of the node
+	 */
+	private void siftDown(int i) {
+		int node = this.heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= this.size) {
+				break;
+			}
+			if (child + 1 < this.size &&
+					isBefore(this.heap[child + 1], this.heap[child])) {
+				child++;
+			}
+			if (!isBefore(this.heap[child], node)) {
+				break;
+			}
+			placeInHeap(this.heap[child], i);
+			i = child;
+		}
+		placeInHeap(node, i);
+	}
+
+	/**
+	 * Puts a node to a position of the heap
+	 * @param node Address of the node
+	 * @param i The heap position
+	 */
+	private void placeInHeap(int node, int i) {
+		this.heap[i] = node;
+		this.heapPositions[node] = i;
+	}
+
+	/**
+	 * Throws an error if this set is a snapshot
+	 * @throws SimError if this set is a snapshot
+	 */
+	private void checkNotFrozen() {
+		if (this.frozen) {
+			throw new SimError("Can't modify a snapshot of the meeting " +
+					"probabilities");
+		}
+	}
 	
 	/**
 	 * Returns a String presentation of the probabilities
@@ -168,6 +496,6 @@ public class MeetingProbabilitySet {
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
-}
\ No newline at end of file
+}
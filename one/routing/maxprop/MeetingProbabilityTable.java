@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.maxprop;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The meeting probability sets that a MaxProp router knows, mapped using the
+ * hosts' network addresses. The table logs the changes of its mapping, so
+ * when two hosts meet, only the sets that have changed since the hosts last
+ * met need to be checked. The sets of other hosts are kept as immutable
+ * snapshots (see {@link MeetingProbabilitySet#snapshot()}) that are shared
+ * by all the tables that know the same version of a set.
+ * <P>
+ * A set in the table is only ever replaced by a set whose last update time
+ * is at least as recent. Because of that, a set that hasn't changed since
+ * the last exchange can't be newer than the one the receiver already has,
+ * and skipping it gives the same result as checking all the sets.
+ * </P>
+ */
+public class MeetingProbabilityTable {
+	/** the sets by host address */
+	private Map<Integer, MeetingProbabilitySet> sets;
+	/** addresses of the hosts whose set changed, in the order of changes */
+	private int[] logNodes;
+	/** sequence numbers of the changes in the log (ascending) */
+	private int[] logSeqs;
+	/** number of entries in the log */
+	private int logSize;
+	/** sequence number of the latest change of each host's set (by address;
+	 * 0 if the set hasn't changed) */
+	private int[] changeSeqs;
+	/** sequence number of the latest change */
+	private int seq;
+	/** sequence number of the latest change each host has been sent
+	 * (by host address; -1 if nothing has been sent) */
+	private int[] sentSeqs;
+
+	/**
+	 * Creates an empty table
+	 */
+	public MeetingProbabilityTable() {
+		this.sets = new HashMap<Integer, MeetingProbabilitySet>();
+		this.logNodes = new int[16];
+		this.logSeqs = new int[16];
+		this.logSize = 0;
+		this.changeSeqs = new int[16];
+		this.seq = 0;
+		this.sentSeqs = new int[0];
+	}
+
+	/**
+	 * Returns a read-only view of the sets of this table. The view reflects
+	 * later changes of the table.
+	 * @return the sets by host address
+	 */
+	public Map<Integer, MeetingProbabilitySet> getSets() {
+		return Collections.unmodifiableMap(this.sets);
+	}
+
+	/**
+	 * Returns the set of a host
+	 * @param address Address of the host
+	 * @return the set or null if the table has no set for the host
+	 */
+	public MeetingProbabilitySet get(int address) {
+		return this.sets.get(address);
+	}
+
+	/**
+	 * Puts a host's set to the table. Putting the same set object again is
+	 * not logged as a change. A host's own set can be put to its table as is;
+	 * other sets should be snapshots.
+	 * @param address Address of the host
+	 * @param set The host's set
+	 */
+	public void put(int address, MeetingProbabilitySet set) {
+		if (this.sets.put(address, set) == set) {
+			return;
+		}
+
+		this.seq++;
+		if (address >= this.changeSeqs.length) {
+			this.changeSeqs = Arrays.copyOf(this.changeSeqs,
+					Math.max(address + 1, this.changeSeqs.length * 2));
+		}
+		this.changeSeqs[address] = this.seq;
+
+		if (this.logSize == this.logNodes.length) {
+			compactLog();
+		}
+		this.logNodes[this.logSize] = address;
+		this.logSeqs[this.logSize] = this.seq;
+		this.logSize++;
+	}
+
+	/**
+	 * Updates this table with the newer sets of another table. Only the sets
+	 * that the other table has changed since it last updated this table are
+	 * checked. The other host's own set is always checked because it changes
+	 * without being put to the table again.
+	 * @param other The other host's table
+	 * @param address Address of this table's host
+	 * @param otherAddress Address of the other table's host
+	 */
+	public void updateFrom(MeetingProbabilityTable other, int address,
+			int otherAddress) {
+		int since = other.getSentSeq(address);
+		int from = other.firstLogEntryAfter(since);
+
+		for (int i=from; i<other.logSize; i++) {
+			int node = other.logNodes[i];
+			if (other.changeSeqs[node] != other.logSeqs[i]) {
+				continue; // the set has changed again later in the log
+			}
+			takeIfNewer(node, other.sets.get(node));
+		}
+
+		MeetingProbabilitySet otherOwn = other.sets.get(otherAddress);
+		if (otherOwn != null) {
+			takeIfNewer(otherAddress, otherOwn);
+		}
+		other.setSentSeq(address, other.seq);
+	}
+
+	/**
+	 * Puts a snapshot of a set to the table if the table has no set for
+	 * the host or the given set has more recent updates
+	 * @param address Address of the set's host
+	 * @param set The set
+	 */
+	private void takeIfNewer(int address, MeetingProbabilitySet set) {
+		MeetingProbabilitySet mine = this.sets.get(address);
+		if (mine == null ||
+				set.getLastUpdateTime() > mine.getLastUpdateTime()) {
+			put(address, set.snapshot());
+		}
+	}
+
+	/**
+	 * Returns the position of the first log entry after the given sequence
+	 * number
+	 * @param since The sequence number
+	 * @return the position (the log size if there are no such entries)
+	 */
+	private int firstLogEntryAfter(int since) {
+		int pos = Arrays.binarySearch(this.logSeqs, 0, this.logSize,
+				since + 1);
+		return pos >= 0 ? pos : -(pos + 1);
+	}
+
+	/**
+	 * Returns the sequence number of the latest change sent to a host
+	 * @param address Address of the host
+	 * @return the sequence number or -1 if nothing has been sent
+	 */
+	private int getSentSeq(int address) {
+		return address < this.sentSeqs.length ? this.sentSeqs[address] : -1;
+	}
+
+	/**
+	 * Sets the sequence number of the latest change sent to a host
+	 * @param address Address of the host
+	 * @param seq The sequence number
+	 */
+	private void setSentSeq(int address, int seq) {
+		if (address >= this.sentSeqs.length) {
+			int oldLength = this.sentSeqs.length;
+			this.sentSeqs = Arrays.copyOf(this.sentSeqs,
+					Math.max(address + 1, oldLength * 2));
+			Arrays.fill(this.sentSeqs, oldLength, this.sentSeqs.length, -1);
+		}
+		this.sentSeqs[address] = seq;
+	}
+
+	/**
+	 * Drops the log entries of sets that have changed again later. If that
+	 * doesn't free at least half of the log, the log is grown.
+	 */
+	private void compactLog() {
+		int live = 0;
+		for (int i=0; i<this.logSize; i++) {
+			if (this.changeSeqs[this.logNodes[i]] == this.logSeqs[i]) {
+				this.logNodes[live] = this.logNodes[i];
+				this.logSeqs[live] = this.logSeqs[i];
+				live++;
+			}
+		}
+		this.logSize = live;
+
+		if (live > this.logNodes.length / 2) {
+			this.logNodes = Arrays.copyOf(this.logNodes,
+					this.logNodes.length * 2);
+			this.logSeqs = Arrays.copyOf(this.logSeqs, this.logSeqs.length * 2);
+		}
+	}
+}